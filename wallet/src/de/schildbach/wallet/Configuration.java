@@ -17,13 +17,19 @@
 
 package de.schildbach.wallet;
 
+import java.util.Calendar;
+import java.util.List;
+
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.utils.Fiat;
 import org.bitcoinj.utils.MonetaryFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
 
 import de.schildbach.wallet.data.ExchangeRate;
 
@@ -33,6 +39,7 @@ import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.res.Resources;
 import android.net.Uri;
 import android.text.format.DateUtils;
+import androidx.annotation.Nullable;
 
 /**
  * @author Andreas Schildbach
@@ -66,9 +73,17 @@ public class Configuration {
     public static final String PREFS_KEY_REMIND_BACKUP = "remind_backup";
     private static final String PREFS_KEY_LAST_BACKUP = "last_backup";
     private static final String PREFS_KEY_LAST_BLUETOOTH_ADDRESS = "last_bluetooth_address";
+    private static final String PREFS_KEY_CLEAN_WALLET_CHECKSUM = "clean_wallet_checksum";
+    private static final String PREFS_KEY_SYNC_MAX_LAG = "sync_max_lag";
+    private static final String PREFS_KEY_USAGE_BY_HOUR = "usage_by_hour";
+    private static final String PREFS_KEY_SYNC_OVERHEAD = "sync_overhead";
+    private static final String PREFS_KEY_SYNC_PER_BLOCK = "sync_per_block";
+    private static final String PREFS_KEY_PENDING_OUTGOING = "pending_outgoing";
 
 	private static final int PREFS_DEFAULT_BTC_SHIFT = 0;
 	private static final int PREFS_DEFAULT_BTC_PRECISION = 2;
+    private static final int USAGE_BY_HOUR_MAX_COUNT = 100;
+    private static final float SYNC_AVERAGE_WEIGHT = 0.3f;
 
     private static final Logger log = LoggerFactory.getLogger(Configuration.class);
 
@@ -223,6 +238,75 @@ public class Configuration {
         prefs.edit().putLong(PREFS_KEY_LAST_USED, now).apply();
 
         log.info("just being used - last used {} minutes ago", (now - prefsLastUsed) / DateUtils.MINUTE_IN_MILLIS);
+
+        final int[] usage = getUsageByHour();
+        final int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        if (++usage[hour] > USAGE_BY_HOUR_MAX_COUNT)
+            for (int i = 0; i < usage.length; i++)
+                usage[i] /= 2; // decay, so habits can change
+        prefs.edit().putString(PREFS_KEY_USAGE_BY_HOUR, Joiner.on(',').join(Ints.asList(usage))).apply();
+    }
+
+    /**
+     * @return number of times the app was used, for each hour of the day in local time
+     */
+    public int[] getUsageByHour() {
+        final int[] usage = new int[24];
+        final String str = prefs.getString(PREFS_KEY_USAGE_BY_HOUR, null);
+        if (str != null) {
+            final List<String> counts = Splitter.on(',').splitToList(str);
+            for (int i = 0; i < usage.length && i < counts.size(); i++) {
+                final Integer count = Ints.tryParse(counts.get(i));
+                usage[i] = count != null ? count : 0;
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * @return maximum time the blockchain should lag behind while the app is being used regularly
+     */
+    public long getSyncMaxLagMs() {
+        return prefs.getLong(PREFS_KEY_SYNC_MAX_LAG, Constants.SYNC_MAX_LAG_MS);
+    }
+
+    public void setSyncMaxLagMs(final long syncMaxLagMs) {
+        prefs.edit().putLong(PREFS_KEY_SYNC_MAX_LAG, syncMaxLagMs).apply();
+    }
+
+    /**
+     * @return average time from service start until the first block arrives
+     */
+    public long getSyncOverheadMs() {
+        return (long) prefs.getFloat(PREFS_KEY_SYNC_OVERHEAD, Constants.PEER_DISCOVERY_TIMEOUT_MS);
+    }
+
+    /**
+     * @return average time needed for downloading one block, once the download is running
+     */
+    public long getSyncPerBlockMs() {
+        return (long) prefs.getFloat(PREFS_KEY_SYNC_PER_BLOCK, 100);
+    }
+
+    public void recordCatchUp(final long overheadMs, final int numBlocks, final long downloadMs) {
+        final Editor edit = prefs.edit();
+        edit.putFloat(PREFS_KEY_SYNC_OVERHEAD, average(prefs.getFloat(PREFS_KEY_SYNC_OVERHEAD, 0), overheadMs));
+        if (numBlocks > 0)
+            edit.putFloat(PREFS_KEY_SYNC_PER_BLOCK,
+                    average(prefs.getFloat(PREFS_KEY_SYNC_PER_BLOCK, 0), (float) downloadMs / numBlocks));
+        edit.apply();
+    }
+
+    private static float average(final float average, final float sample) {
+        return average > 0 ? average + (sample - average) * SYNC_AVERAGE_WEIGHT : sample;
+    }
+
+    public boolean hasPendingOutgoingTransactions() {
+        return prefs.getBoolean(PREFS_KEY_PENDING_OUTGOING, false);
+    }
+
+    public void setPendingOutgoingTransactions(final boolean pendingOutgoing) {
+        prefs.edit().putBoolean(PREFS_KEY_PENDING_OUTGOING, pendingOutgoing).apply();
     }
 
     public int getBestChainHeightEver() {
@@ -234,6 +318,15 @@ public class Configuration {
             prefs.edit().putInt(PREFS_KEY_BEST_CHAIN_HEIGHT_EVER, bestChainHeightEver).apply();
     }
 
+    @Nullable
+    public String getCleanWalletChecksum() {
+        return prefs.getString(PREFS_KEY_CLEAN_WALLET_CHECKSUM, null);
+    }
+
+    public void setCleanWalletChecksum(@Nullable final String cleanWalletChecksum) {
+        prefs.edit().putString(PREFS_KEY_CLEAN_WALLET_CHECKSUM, cleanWalletChecksum).apply();
+    }
+
     public ExchangeRate getCachedExchangeRate() {
         if (prefs.contains(PREFS_KEY_CACHED_EXCHANGE_CURRENCY) && prefs.contains(PREFS_KEY_CACHED_EXCHANGE_RATE_COIN)
                 && prefs.contains(PREFS_KEY_CACHED_EXCHANGE_RATE_FIAT)) {
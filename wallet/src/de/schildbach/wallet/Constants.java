@@ -66,9 +66,12 @@ public final class Constants {
         /** Filename of the wallet. */
         public static final String WALLET_FILENAME_PROTOBUF = "wallet-protobuf" + FILENAME_NETWORK_SUFFIX;
 
-        /** How often the wallet is autosaved. */
+        /** How soon the wallet is autosaved after coins were sent or received. */
         public static final long WALLET_AUTOSAVE_DELAY_MS = 3 * DateUtils.SECOND_IN_MILLIS;
 
+        /** How long any change to the wallet may remain unsaved, e.g. while replaying the blockchain. */
+        public static final long WALLET_AUTOSAVE_MAX_DELAY_MS = DateUtils.MINUTE_IN_MILLIS;
+
         /** Filename of the automatic key backup (old format, can only be read). */
         public static final String WALLET_KEY_BACKUP_BASE58 = "key-backup-base58" + FILENAME_NETWORK_SUFFIX;
 
@@ -91,9 +94,21 @@ public final class Constants {
         /** Filename of the block store for storing the chain. */
         public static final String BLOCKCHAIN_FILENAME = "blockchain" + FILENAME_NETWORK_SUFFIX;
 
+        /** Filename of the peer scoreboard. */
+        public static final String PEER_SCOREBOARD_FILENAME = "peers" + FILENAME_NETWORK_SUFFIX;
+
+        /** Filename of the exchange rates cache. */
+        public static final String EXCHANGE_RATES_FILENAME = "exchange-rates";
+
+        /** Directory of the exchange rate history, one file per currency. */
+        public static final String EXCHANGE_RATE_HISTORY_DIRECTORY = "exchange-rate-history";
+
         /** Filename of the block checkpoints file. */
         public static final String CHECKPOINTS_FILENAME = "checkpoints" + FILENAME_NETWORK_SUFFIX + ".txt";
 
+        /** Filename of the block checkpoints file, compiled to binary format at build time. */
+        public static final String CHECKPOINTS_BINARY_FILENAME = "checkpoints" + FILENAME_NETWORK_SUFFIX + ".bin";
+
         /** Filename of the fees files. */
         public static final String FEES_FILENAME = "fees" + FILENAME_NETWORK_SUFFIX + ".txt";
 
@@ -165,6 +180,9 @@ public final class Constants {
     public static final long LAST_USAGE_THRESHOLD_RECENTLY_MS = 2 * DateUtils.DAY_IN_MILLIS;
     public static final long LAST_USAGE_THRESHOLD_INACTIVE_MS = 4 * DateUtils.WEEK_IN_MILLIS;
 
+    /** Default for how far the blockchain may lag behind while the app is being used regularly. */
+    public static final long SYNC_MAX_LAG_MS = 2 * DateUtils.HOUR_IN_MILLIS;
+
     public static final long DELAYED_TRANSACTION_THRESHOLD_MS = 2 * DateUtils.HOUR_IN_MILLIS;
 
     /** A balance above this amount will show a warning */
@@ -183,6 +201,10 @@ public final class Constants {
     public static final String NOTIFICATION_CHANNEL_ID_ONGOING = "ongoing";
     public static final String NOTIFICATION_CHANNEL_ID_IMPORTANT = "important";
 
+    /** Number of block headers kept in a newly created block store */
+    public static final int BLOCKSTORE_CAPACITY = 10000;
+    public static final int BLOCKSTORE_CAPACITY_LOWRAM = 5000;
+
     /** Desired number of scrypt iterations for deriving the spending PIN */
     public static final int SCRYPT_ITERATIONS_TARGET = 65536;
     public static final int SCRYPT_ITERATIONS_TARGET_LOWRAM = 32768;
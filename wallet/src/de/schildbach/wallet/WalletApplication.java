@@ -17,13 +17,14 @@
 
 package de.schildbach.wallet;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.VerificationException;
@@ -33,7 +34,6 @@ import org.bitcoinj.crypto.MnemonicCode;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
-import org.bitcoinj.wallet.WalletFiles;
 import org.bitcoinj.wallet.WalletProtobufSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,9 +41,19 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import com.google.common.util.concurrent.SettableFuture;
 
+import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.TransactionIndexUpdater;
+import de.schildbach.wallet.data.WalletAutosave;
+import de.schildbach.wallet.data.WalletLoadingState;
 import de.schildbach.wallet.service.BlockchainService;
+import de.schildbach.wallet.util.Bip39Wordlist;
 import de.schildbach.wallet.util.Bluetooth;
 import de.schildbach.wallet.util.CrashReporter;
 import de.schildbach.wallet.util.Toast;
@@ -65,8 +75,11 @@ import android.os.Build;
 import android.os.Looper;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
+import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 import androidx.annotation.WorkerThread;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 /**
@@ -76,7 +89,7 @@ public class WalletApplication extends Application {
     private ActivityManager activityManager;
 
     private File walletFile;
-    private WalletFiles walletFiles;
+    private volatile WalletAutosave walletAutosave;
     private Configuration config;
 
     public static final String ACTION_WALLET_REFERENCE_CHANGED = WalletApplication.class.getPackage().getName()
@@ -84,6 +97,8 @@ public class WalletApplication extends Application {
 
     public static final long TIME_CREATE_APPLICATION = System.currentTimeMillis();
     private static final String BIP39_WORDLIST_FILENAME = "bip39-wordlist.txt";
+    private static final int WALLET_READ_BUFFER_SIZE = 64 * 1024;
+    private static final HashFunction WALLET_CHECKSUM_FUNCTION = Hashing.sha256();
 
     private static final Logger log = LoggerFactory.getLogger(WalletApplication.class);
 
@@ -95,6 +110,11 @@ public class WalletApplication extends Application {
 
         StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder().detectAll().permitDiskReads()
                 .permitDiskWrites().penaltyLog().build());
+        final StrictMode.VmPolicy.Builder vmPolicy = new StrictMode.VmPolicy.Builder().detectLeakedSqlLiteObjects()
+                .penaltyLog();
+        if (BuildConfig.DEBUG)
+            vmPolicy.penaltyDeath();
+        StrictMode.setVmPolicy(vmPolicy.build());
 
         Threading.throwOnLockCycles();
         org.bitcoinj.core.Context.enableStrictMode();
@@ -138,8 +158,17 @@ public class WalletApplication extends Application {
         return config;
     }
 
+    /**
+     * Returns the wallet, blocking until it is loaded. Once the wallet is loaded this returns immediately, so it's
+     * acceptable on the main thread in places that are only reachable with a loaded wallet. Everywhere else, use
+     * {@link #getWalletAsync(OnWalletLoadedListener)}.
+     */
     @MainThread
     public Wallet getWallet() {
+        final WalletAutosave walletAutosave = this.walletAutosave;
+        if (walletAutosave != null)
+            return walletAutosave.getWallet();
+
         final Stopwatch watch = Stopwatch.createStarted();
         final SettableFuture<Wallet> future = SettableFuture.create();
         getWalletAsync(new OnWalletLoadedListener() {
@@ -161,28 +190,59 @@ public class WalletApplication extends Application {
 
     private final Executor getWalletExecutor = Executors.newSingleThreadExecutor();
     private final Object getWalletLock = new Object();
+    private TransactionIndexUpdater transactionIndexUpdater;
+    private final Object bip39WordlistLock = new Object();
+    private Bip39Wordlist bip39Wordlist;
+    private WalletLoadingState walletLoadingState;
+    private final MutableLiveData<WalletLoadingState> walletLoadingStateLiveData = new MutableLiveData<>();
+
+    /**
+     * Progress of loading the wallet, phase by phase. Only emits during the first load of the wallet.
+     */
+    public LiveData<WalletLoadingState> getWalletLoadingState() {
+        return walletLoadingStateLiveData;
+    }
 
-    @MainThread
+    /**
+     * Loads the wallet in the background, if needed, and hands it to the listener on a background thread. Preferred
+     * over {@link #getWallet()} everywhere, because the first load of a large wallet can take seconds.
+     */
+    @AnyThread
     public void getWalletAsync(final OnWalletLoadedListener listener) {
         getWalletExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
                 synchronized (getWalletLock) {
-                    initMnemonicCode();
-                    if (walletFiles == null)
+                    if (walletAutosave == null) {
                         loadWalletFromProtobuf();
+                        startTransactionIndex(walletAutosave.getWallet(), false);
+                        enterWalletLoadingPhase(WalletLoadingState.Phase.LOADED);
+                        log.info("wallet loading finished, took {} ms: {}", walletLoadingState.getTotalDuration(),
+                                walletLoadingState);
+                    }
                 }
-                listener.onWalletLoaded(walletFiles.getWallet());
+                listener.onWalletLoaded(walletAutosave.getWallet());
+            }
+
+            private void enterWalletLoadingPhase(final WalletLoadingState.Phase phase) {
+                walletLoadingState = walletLoadingState == null ? WalletLoadingState.start(phase)
+                        : walletLoadingState.next(phase);
+                walletLoadingStateLiveData.postValue(walletLoadingState);
             }
 
             @WorkerThread
             private void loadWalletFromProtobuf() {
                 Wallet wallet;
                 if (walletFile.exists()) {
-                    try (final FileInputStream walletStream = new FileInputStream(walletFile)) {
+                    enterWalletLoadingPhase(WalletLoadingState.Phase.PARSE);
+                    String checksum = null;
+                    try (final HashingInputStream walletStream = new HashingInputStream(WALLET_CHECKSUM_FUNCTION,
+                            new BufferedInputStream(new FileInputStream(walletFile), WALLET_READ_BUFFER_SIZE))) {
                         final Stopwatch watch = Stopwatch.createStarted();
                         wallet = new WalletProtobufSerializer().readWallet(walletStream);
+                        ByteStreams.exhaust(walletStream);
+                        checksum = walletStream.hash().toString();
                         watch.stop();
 
                         if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
@@ -192,11 +252,15 @@ public class WalletApplication extends Application {
                         log.info("wallet loaded from: '{}', took {}", walletFile, watch);
                     } catch (final IOException | UnreadableWalletException x) {
                         log.warn("problem loading wallet, auto-restoring: " + walletFile, x);
+                        checksum = null;
                         wallet = WalletUtils.restoreWalletFromAutoBackup(WalletApplication.this);
                         if (wallet != null)
                             new Toast(WalletApplication.this).postLongToast(R.string.toast_wallet_reset);
                     }
-                    if (!wallet.isConsistent()) {
+                    enterWalletLoadingPhase(WalletLoadingState.Phase.CONSISTENCY_CHECK);
+                    if (checksum != null && checksum.equals(config.getCleanWalletChecksum())) {
+                        log.info("skipping consistency check, wallet unchanged since last clean shutdown");
+                    } else if (!wallet.isConsistent()) {
                         log.warn("inconsistent wallet, auto-restoring: " + walletFile);
                         wallet = WalletUtils.restoreWalletFromAutoBackup(WalletApplication.this);
                         if (wallet != null)
@@ -206,36 +270,65 @@ public class WalletApplication extends Application {
                     if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
                         throw new Error("bad wallet network parameters: " + wallet.getParams().getId());
 
+                    // pre-HD wallets are upgraded lazily by the first fresh key they hand out
+                    if (wallet.isDeterministicUpgradeRequired())
+                        initMnemonicCode();
+
+                    enterWalletLoadingPhase(WalletLoadingState.Phase.CLEANUP);
                     wallet.cleanup();
-                    walletFiles = wallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS,
-                            TimeUnit.MILLISECONDS, null);
+                    enterWalletLoadingPhase(WalletLoadingState.Phase.AUTOSAVE);
+                    walletAutosave = new WalletAutosave(wallet, walletFile, config);
                 } else {
+                    enterWalletLoadingPhase(WalletLoadingState.Phase.AUTOSAVE);
                     final Stopwatch watch = Stopwatch.createStarted();
+                    initMnemonicCode();
                     wallet = new Wallet(Constants.NETWORK_PARAMETERS);
-                    walletFiles = wallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS,
-                            TimeUnit.MILLISECONDS, null);
-                    autosaveWalletNow(); // persist...
-                    WalletUtils.autoBackupWallet(WalletApplication.this, wallet); // ...and backup asap
+                    walletAutosave = new WalletAutosave(wallet, walletFile, config);
+                    autosaveWalletNow(); // persist and backup asap
                     watch.stop();
                     log.info("fresh wallet created, took {}", watch);
 
                     config.armBackupReminder();
                 }
             }
+        });
+    }
 
-            private void initMnemonicCode() {
-                if (MnemonicCode.INSTANCE == null) {
-                    try {
-                        final Stopwatch watch = Stopwatch.createStarted();
-                        MnemonicCode.INSTANCE = new MnemonicCode(getAssets().open(BIP39_WORDLIST_FILENAME), null);
-                        watch.stop();
-                        log.info("BIP39 wordlist loaded from: '{}', took {}", BIP39_WORDLIST_FILENAME, watch);
-                    } catch (final IOException x) {
-                        throw new Error(x);
-                    }
+    /**
+     * The wordlist is only needed for creating new seeds and for entering mnemonics, so it's loaded on first use
+     * rather than as part of loading the wallet.
+     */
+    public Bip39Wordlist getBip39Wordlist() {
+        synchronized (bip39WordlistLock) {
+            if (bip39Wordlist == null) {
+                try (final InputStream is = getAssets().open(BIP39_WORDLIST_FILENAME)) {
+                    final Stopwatch watch = Stopwatch.createStarted();
+                    bip39Wordlist = Bip39Wordlist.read(is);
+                    watch.stop();
+                    log.info("BIP39 wordlist loaded from: '{}', took {}", BIP39_WORDLIST_FILENAME, watch);
+                } catch (final IOException x) {
+                    throw new Error(x);
                 }
             }
-        });
+            return bip39Wordlist;
+        }
+    }
+
+    /**
+     * Makes sure bitcoinj can create new seeds. Call before anything that may create a new key chain, like creating
+     * a wallet, upgrading it to HD or doing maintenance on it. Wallets that still need the HD upgrade get this when
+     * loaded, because bitcoinj upgrades them implicitly on the first call to freshReceiveAddress() and friends.
+     */
+    public void initMnemonicCode() {
+        synchronized (bip39WordlistLock) {
+            if (MnemonicCode.INSTANCE == null) {
+                try {
+                    MnemonicCode.INSTANCE = getBip39Wordlist().toMnemonicCode();
+                } catch (final IOException x) {
+                    throw new Error(x);
+                }
+            }
+        }
     }
 
     public static interface OnWalletLoadedListener {
@@ -245,11 +338,16 @@ public class WalletApplication extends Application {
     public void autosaveWalletNow() {
         final Stopwatch watch = Stopwatch.createStarted();
         synchronized (getWalletLock) {
-            if (walletFiles != null) {
-                watch.stop();
-                log.info("wallet saved to: '{}', took {}", walletFile, watch);
+            if (walletAutosave != null) {
                 try {
-                    walletFiles.saveNow();
+                    walletAutosave.saveNow();
+                    watch.stop();
+                    log.info("wallet saved to: '{}', took {}", walletFile, watch);
+                    // this is what a clean shutdown leaves behind, so the next load can trust it
+                    config.setCleanWalletChecksum(
+                            Files.asByteSource(walletFile).hash(WALLET_CHECKSUM_FUNCTION).toString());
+                    // nearly free if the keys didn't change
+                    WalletUtils.autoBackupWallet(this, walletAutosave.getWallet());
                 } catch (final IOException x) {
                     log.warn("problem with forced autosaving of wallet", x);
                     CrashReporter.saveBackgroundTrace(x, packageInfo);
@@ -258,15 +356,25 @@ public class WalletApplication extends Application {
         }
     }
 
+    /**
+     * @return number of bytes the wallet autosave wrote within the last hour, or -1 if the wallet isn't loaded yet
+     */
+    public long getWalletBytesWrittenLastHour() {
+        final WalletAutosave walletAutosave = this.walletAutosave;
+        return walletAutosave != null ? walletAutosave.getBytesWrittenLastHour() : -1;
+    }
+
     public void replaceWallet(final Wallet newWallet) {
+        if (newWallet.isDeterministicUpgradeRequired())
+            initMnemonicCode();
         newWallet.cleanup();
         BlockchainService.resetBlockchain(this);
 
-        final Wallet oldWallet = getWallet();
+        getWallet(); // make sure there is an old wallet to replace
         synchronized (getWalletLock) {
-            oldWallet.shutdownAutosaveAndWait(); // this will also prevent BlockchainService to save
-            walletFiles = newWallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS,
-                    TimeUnit.MILLISECONDS, null);
+            walletAutosave.stop(); // this will also prevent BlockchainService to save
+            walletAutosave = new WalletAutosave(newWallet, walletFile, config);
+            startTransactionIndex(newWallet, true);
         }
         config.maybeIncrementBestChainHeightEver(newWallet.getLastBlockSeenHeight());
         WalletUtils.autoBackupWallet(this, newWallet);
@@ -275,6 +383,14 @@ public class WalletApplication extends Application {
         LocalBroadcastManager.getInstance(this).sendBroadcast(broadcast);
     }
 
+    private void startTransactionIndex(final Wallet wallet, final boolean reset) {
+        if (transactionIndexUpdater != null)
+            transactionIndexUpdater.stop();
+        transactionIndexUpdater = new TransactionIndexUpdater(wallet,
+                AppDatabase.getDatabase(this).transactionIndexDao());
+        transactionIndexUpdater.start(reset);
+    }
+
     private void cleanupFiles() {
         for (final String filename : fileList()) {
             if (filename.startsWith(Constants.Files.WALLET_KEY_BACKUP_BASE58)
@@ -358,6 +474,10 @@ public class WalletApplication extends Application {
         return activityManager.isLowRamDevice() ? 4 : 6;
     }
 
+    public int blockStoreCapacity() {
+        return activityManager.isLowRamDevice() ? Constants.BLOCKSTORE_CAPACITY_LOWRAM : Constants.BLOCKSTORE_CAPACITY;
+    }
+
     public int scryptIterationsTarget() {
         return activityManager.isLowRamDevice() ? Constants.SCRYPT_ITERATIONS_TARGET_LOWRAM
                 : Constants.SCRYPT_ITERATIONS_TARGET;
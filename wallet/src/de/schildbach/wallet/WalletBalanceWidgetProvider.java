@@ -22,6 +22,7 @@ import java.lang.reflect.Method;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.utils.Fiat;
 import org.bitcoinj.utils.MonetaryFormat;
+import org.bitcoinj.wallet.Wallet;
 import org.bitcoinj.wallet.Wallet.BalanceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +41,6 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.Spannable;
 import android.text.style.ForegroundColorSpan;
@@ -56,12 +56,12 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(final Context context, final AppWidgetManager appWidgetManager, final int[] appWidgetIds) {
+        final WalletApplication application = (WalletApplication) context.getApplicationContext();
         final PendingResult result = goAsync();
-        AsyncTask.execute(new Runnable() {
+        application.getWalletAsync(new WalletApplication.OnWalletLoadedListener() {
             @Override
-            public void run() {
-                final WalletApplication application = (WalletApplication) context.getApplicationContext();
-                final Coin balance = application.getWallet().getBalance(BalanceType.ESTIMATED);
+            public void onWalletLoaded(final Wallet wallet) {
+                final Coin balance = wallet.getBalance(BalanceType.ESTIMATED);
                 final ExchangeRate exchangeRate = application.getConfiguration().getCachedExchangeRate();
                 updateWidgets(context, appWidgetManager, appWidgetIds, balance, exchangeRate);
                 result.finish();
@@ -75,12 +75,12 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
         if (newOptions != null)
             log.info("app widget {} options changed: minWidth={}", appWidgetId,
                     newOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH));
+        final WalletApplication application = (WalletApplication) context.getApplicationContext();
         final PendingResult result = goAsync();
-        AsyncTask.execute(new Runnable() {
+        application.getWalletAsync(new WalletApplication.OnWalletLoadedListener() {
             @Override
-            public void run() {
-                final WalletApplication application = (WalletApplication) context.getApplicationContext();
-                final Coin balance = application.getWallet().getBalance(BalanceType.ESTIMATED);
+            public void onWalletLoaded(final Wallet wallet) {
+                final Coin balance = wallet.getBalance(BalanceType.ESTIMATED);
                 final ExchangeRate exchangeRate = application.getConfiguration().getCachedExchangeRate();
                 updateWidget(context, appWidgetManager, appWidgetId, newOptions, balance, exchangeRate);
                 result.finish();
@@ -0,0 +1,163 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+
+/**
+ * The address book as a map from address to entry, shared by all consumers. It is loaded once and reloaded in the
+ * background whenever Room reports the address book table changed. As live data, it delivers the map to observers
+ * after each change.
+ *
+ * On the main thread, the last loaded map is used rather than querying the database, even if a reload is pending.
+ *
+ * @author Andreas Schildbach
+ */
+public class AddressBookCache extends LiveData<Map<String, AddressBookEntry>> {
+    private final AddressBookDao addressBookDao;
+    @Nullable
+    private Map<String, AddressBookEntry> entries = null;
+    private boolean stale = true;
+    private int version = 0;
+
+    private static final String TABLE_NAME = "address_book";
+
+    private static AddressBookCache INSTANCE;
+
+    public static AddressBookCache get(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (AddressBookCache.class) {
+                if (INSTANCE == null)
+                    INSTANCE = new AddressBookCache(AppDatabase.getDatabase(context));
+            }
+        }
+        return INSTANCE;
+    }
+
+    private AddressBookCache(final AppDatabase database) {
+        this.addressBookDao = database.addressBookDao();
+        database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer(TABLE_NAME) {
+            @Override
+            public void onInvalidated(final Set<String> tables) {
+                synchronized (AddressBookCache.this) {
+                    stale = true;
+                    version++;
+                }
+                loadAsync();
+            }
+        });
+        loadAsync();
+    }
+
+    @Override
+    protected void onActive() {
+        final Map<String, AddressBookEntry> entries;
+        synchronized (this) {
+            entries = this.entries;
+        }
+        if (entries != null && getValue() != entries)
+            setValue(entries);
+    }
+
+    /**
+     * @return all entries, keyed by address. Off the main thread, loads them from the database if needed. On the
+     *         main thread, returns what is loaded already, which is empty only shortly after the app starts.
+     */
+    public Map<String, AddressBookEntry> getEntries() {
+        final Map<String, AddressBookEntry> entries;
+        synchronized (this) {
+            if (!stale)
+                return this.entries;
+            entries = this.entries;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper())
+            return entries != null ? entries : Collections.<String, AddressBookEntry> emptyMap();
+        return load();
+    }
+
+    @Nullable
+    public String resolveLabel(final String address) {
+        final AddressBookEntry entry = getEntries().get(address);
+        return entry != null ? entry.getLabel() : null;
+    }
+
+    /**
+     * @return labels of the given addresses that have one, keyed by address. Off the main thread and while a reload
+     *         is pending, only the given addresses are queried rather than waiting for the whole address book.
+     */
+    public Map<String, String> resolveLabels(final Collection<String> addresses) {
+        final Map<String, String> labels = new HashMap<>();
+        final boolean stale;
+        synchronized (this) {
+            stale = this.stale;
+        }
+        if (stale && Looper.myLooper() != Looper.getMainLooper()) {
+            for (final AddressBookEntry entry : addressBookDao.resolveLabels(addresses))
+                if (entry.getLabel() != null)
+                    labels.put(entry.getAddress(), entry.getLabel());
+            return labels;
+        }
+        final Map<String, AddressBookEntry> entries = getEntries();
+        for (final String address : addresses) {
+            final AddressBookEntry entry = entries.get(address);
+            if (entry != null && entry.getLabel() != null)
+                labels.put(address, entry.getLabel());
+        }
+        return labels;
+    }
+
+    private void loadAsync() {
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    private Map<String, AddressBookEntry> load() {
+        final int version;
+        synchronized (this) {
+            if (!stale)
+                return entries;
+            version = this.version;
+        }
+        final Map<String, AddressBookEntry> entries = Collections
+                .unmodifiableMap(AddressBookEntry.asMap(addressBookDao.getAllEntries()));
+        synchronized (this) {
+            // don't keep if the table changed while loading, another load is on its way then
+            if (this.version == version) {
+                this.entries = entries;
+                this.stale = false;
+                postValue(entries);
+            }
+        }
+        return entries;
+    }
+}
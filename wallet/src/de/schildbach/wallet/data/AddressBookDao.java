@@ -17,35 +17,72 @@
 
 package de.schildbach.wallet.data;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 /**
  * @author Andreas Schildbach
  */
 @Dao
-public interface AddressBookDao {
+public abstract class AddressBookDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertOrUpdate(AddressBookEntry addressBookEntry);
+    public abstract void insertOrUpdate(AddressBookEntry addressBookEntry);
 
     @Query("DELETE FROM address_book WHERE address = :address")
-    void delete(String address);
+    public abstract void delete(String address);
 
     @Query("SELECT label FROM address_book WHERE address = :address")
-    String resolveLabel(String address);
+    public abstract String resolveLabel(String address);
+
+    @Query("SELECT * FROM address_book WHERE address IN (:addresses)")
+    public abstract List<AddressBookEntry> resolveLabels(Collection<String> addresses);
+
+    /**
+     * Finds the entries with an address or a word of their label starting with the words of the given constraint.
+     * Uses the full-text index, see {@link AppDatabase}.
+     */
+    public List<AddressBookEntry> search(final String constraint) {
+        final StringBuilder match = new StringBuilder();
+        for (final String word : WORD_SPLITTER.split(constraint)) {
+            if (match.length() > 0)
+                match.append(' ');
+            match.append(word).append('*');
+        }
+        if (match.length() == 0)
+            return Collections.emptyList();
+        return search(new SimpleSQLiteQuery("SELECT address_book.* FROM address_book_fts "
+                + "JOIN address_book ON address_book.address = address_book_fts.address "
+                + "WHERE address_book_fts MATCH ? ORDER BY address_book.label COLLATE LOCALIZED ASC",
+                new Object[] { match.toString() }));
+    }
 
-    @Query("SELECT * FROM address_book WHERE address LIKE '%' || :constraint || '%' OR label LIKE '%' || :constraint || '%' ORDER BY label COLLATE LOCALIZED ASC")
-    List<AddressBookEntry> get(String constraint);
+    // same as the separators of the FTS 'simple' tokenizer: ASCII characters that are neither letters nor digits
+    private static final Splitter WORD_SPLITTER = Splitter
+            .on(CharMatcher.ascii().and(CharMatcher.javaLetterOrDigit().negate())).omitEmptyStrings();
+
+    @RawQuery
+    protected abstract List<AddressBookEntry> search(SupportSQLiteQuery query);
 
     @Query("SELECT * FROM address_book ORDER BY label COLLATE LOCALIZED ASC")
-    LiveData<List<AddressBookEntry>> getAll();
+    public abstract LiveData<List<AddressBookEntry>> getAll();
+
+    @Query("SELECT * FROM address_book")
+    public abstract List<AddressBookEntry> getAllEntries();
 
     @Query("SELECT * FROM address_book WHERE address NOT IN (:except) ORDER BY label COLLATE LOCALIZED ASC")
-    LiveData<List<AddressBookEntry>> getAllExcept(Set<String> except);
+    public abstract LiveData<List<AddressBookEntry>> getAllExcept(Set<String> except);
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import android.content.Context;
+import androidx.lifecycle.LiveData;
+
+/**
+ * Asynchronous access to the address book. Queries and writes run on a single I/O thread, in the order they were
+ * requested, and never on the caller's thread. Live data is loaded by Room in the background anyway.
+ *
+ * For reading labels, prefer {@link AddressBookCache}.
+ *
+ * @author Andreas Schildbach
+ */
+public class AddressBookRepository {
+    private final AddressBookDao dao;
+    private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors
+            .newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("address book").setDaemon(true).build()));
+
+    private static AddressBookRepository INSTANCE;
+
+    public static AddressBookRepository get(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (AddressBookRepository.class) {
+                if (INSTANCE == null)
+                    INSTANCE = new AddressBookRepository(AppDatabase.getDatabase(context).addressBookDao());
+            }
+        }
+        return INSTANCE;
+    }
+
+    private AddressBookRepository(final AddressBookDao dao) {
+        this.dao = dao;
+    }
+
+    public ListenableFuture<Void> insertOrUpdate(final AddressBookEntry entry) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.insertOrUpdate(entry);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> delete(final String address) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.delete(address);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<String> resolveLabel(final String address) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return dao.resolveLabel(address);
+            }
+        });
+    }
+
+    public ListenableFuture<List<AddressBookEntry>> search(final String constraint) {
+        return executor.submit(new Callable<List<AddressBookEntry>>() {
+            @Override
+            public List<AddressBookEntry> call() {
+                return dao.search(constraint);
+            }
+        });
+    }
+
+    public ListenableFuture<List<AddressBookEntry>> getAllEntries() {
+        return executor.submit(new Callable<List<AddressBookEntry>>() {
+            @Override
+            public List<AddressBookEntry> call() {
+                return dao.getAllEntries();
+            }
+        });
+    }
+
+    public LiveData<List<AddressBookEntry>> getAll() {
+        return dao.getAll();
+    }
+
+    public LiveData<List<AddressBookEntry>> getAllExcept(final Set<String> except) {
+        return dao.getAllExcept(except);
+    }
+}
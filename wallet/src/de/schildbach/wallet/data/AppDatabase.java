@@ -27,18 +27,24 @@ import androidx.sqlite.db.SupportSQLiteDatabase;
 /**
  * @author Andreas Schildbach
  */
-@Database(entities = { AddressBookEntry.class }, version = 2, exportSchema = false)
+@Database(entities = { AddressBookEntry.class, TransactionIndexEntry.class }, version = 5, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
     public abstract AddressBookDao addressBookDao();
 
+    public abstract TransactionIndexDao transactionIndexDao();
+
     private static AppDatabase INSTANCE;
 
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, "address_book")
-                            .addMigrations(MIGRATION_1_2).allowMainThreadQueries().build();
+                    // no main thread queries, all access goes through background threads or live data
+                    INSTANCE = Room
+                            .databaseBuilder(context.getApplicationContext(), AppDatabase.class, "address_book")
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
+                            .addCallback(CALLBACK)
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING).build();
                 }
             }
         }
@@ -56,4 +62,71 @@ public abstract class AppDatabase extends RoomDatabase {
             database.execSQL("ALTER TABLE address_book_new RENAME TO address_book");
         }
     };
+
+    private static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(final SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE transaction_index (hash TEXT NOT NULL, update_time INTEGER NOT NULL, "
+                    + "value INTEGER NOT NULL, direction INTEGER NOT NULL, confidence_type INTEGER NOT NULL, "
+                    + "pending INTEGER NOT NULL, address TEXT, label TEXT, PRIMARY KEY(hash))");
+            database.execSQL("CREATE INDEX index_transaction_index_pending_update_time "
+                    + "ON transaction_index (pending, update_time)");
+            createLabelTriggers(database);
+        }
+    };
+
+    private static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(final SupportSQLiteDatabase database) {
+            createSearchIndex(database);
+            database.execSQL("INSERT INTO address_book_fts (address, label) SELECT address, label FROM address_book");
+        }
+    };
+
+    private static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(final SupportSQLiteDatabase database) {
+            // keyset paging seeks on the full list order, also by direction
+            database.execSQL("DROP INDEX index_transaction_index_pending_update_time");
+            database.execSQL("CREATE INDEX index_transaction_index_pending_update_time_hash "
+                    + "ON transaction_index (pending, update_time, hash)");
+            database.execSQL("CREATE INDEX index_transaction_index_direction_pending_update_time_hash "
+                    + "ON transaction_index (direction, pending, update_time, hash)");
+        }
+    };
+
+    private static final Callback CALLBACK = new Callback() {
+        @Override
+        public void onCreate(final SupportSQLiteDatabase database) {
+            createLabelTriggers(database);
+            createSearchIndex(database);
+        }
+    };
+
+    /** Keeps the labels of the transaction index in sync with the address book. */
+    private static void createLabelTriggers(final SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS address_book_insert AFTER INSERT ON address_book BEGIN "
+                + "UPDATE transaction_index SET label = NEW.label WHERE address = NEW.address; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS address_book_update AFTER UPDATE ON address_book BEGIN "
+                + "UPDATE transaction_index SET label = NULL WHERE address = OLD.address; "
+                + "UPDATE transaction_index SET label = NEW.label WHERE address = NEW.address; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS address_book_delete AFTER DELETE ON address_book BEGIN "
+                + "UPDATE transaction_index SET label = NULL WHERE address = OLD.address; END");
+    }
+
+    /**
+     * Full-text index over the address book, for {@link AddressBookDao#search(String)}. Rows are matched by address
+     * rather than rowid, because inserting with conflict strategy replace doesn't fire delete triggers.
+     */
+    private static void createSearchIndex(final SupportSQLiteDatabase database) {
+        database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS address_book_fts USING fts4 (address, label)");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS address_book_fts_insert AFTER INSERT ON address_book BEGIN "
+                + "DELETE FROM address_book_fts WHERE address MATCH NEW.address; "
+                + "INSERT INTO address_book_fts (address, label) VALUES (NEW.address, NEW.label); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS address_book_fts_update AFTER UPDATE ON address_book BEGIN "
+                + "DELETE FROM address_book_fts WHERE address MATCH OLD.address; "
+                + "INSERT INTO address_book_fts (address, label) VALUES (NEW.address, NEW.label); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS address_book_fts_delete AFTER DELETE ON address_book BEGIN "
+                + "DELETE FROM address_book_fts WHERE address MATCH OLD.address; END");
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bitcoinj.utils.Fiat;
+import org.bitcoinj.utils.MonetaryFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+
+import de.schildbach.wallet.util.Formats;
+
+import androidx.annotation.Nullable;
+
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+
+/**
+ * Fetches exchange rates of Goldcoin from the coin endpoint of CoinGecko, which quotes it in many currencies.
+ *
+ * @author Andreas Schildbach
+ */
+public class CoinGeckoExchangeRateSource implements ExchangeRateSource {
+    private static final HttpUrl URL = HttpUrl.parse("https://api.coingecko.com/api/v3/coins/goldcoin"
+            + "?localization=false&tickers=false&community_data=false&developer_data=false&sparkline=false");
+    private static final String NAME = "CoinGecko.com";
+    private static final String COIN_ID = "goldcoin";
+    private static final JsonReader.Options NAMES_COIN = JsonReader.Options.of("id", "market_data");
+    private static final JsonReader.Options NAMES_MARKET_DATA = JsonReader.Options.of("current_price");
+
+    private static final Logger log = LoggerFactory.getLogger(CoinGeckoExchangeRateSource.class);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public HttpUrl getUrl() {
+        return URL;
+    }
+
+    /**
+     * Parses the response as a stream, skipping everything but the coin ID and the current prices.
+     */
+    @Override
+    @Nullable
+    public Map<String, ExchangeRate> parse(final ResponseBody body) throws IOException {
+        try (final JsonReader reader = JsonReader.of(body.source())) {
+            String id = null;
+            Map<String, ExchangeRate> rates = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final int name = reader.selectName(NAMES_COIN);
+                if (name == 0) {
+                    id = reader.nextString();
+                } else if (name == 1) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.selectName(NAMES_MARKET_DATA) == 0) {
+                            rates = parseCurrentPrice(reader);
+                        } else {
+                            reader.skipName();
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipName();
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return COIN_ID.equals(id) ? rates : null;
+        } catch (final JsonDataException x) {
+            throw new IOException(x);
+        }
+    }
+
+    private static Map<String, ExchangeRate> parseCurrentPrice(final JsonReader reader) throws IOException {
+        final Map<String, ExchangeRate> rates = new TreeMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String currencyCode = reader.nextName().toUpperCase(Locale.US);
+            if (reader.peek() == JsonReader.Token.NULL || currencyCode.equals(MonetaryFormat.CODE_BTC)
+                    || currencyCode.equals(MonetaryFormat.CODE_MBTC) || currencyCode.equals(MonetaryFormat.CODE_UBTC)) {
+                reader.skipValue();
+                continue;
+            }
+            final String value = reader.nextString();
+            try {
+                final Fiat rate = Fiat.valueOf(currencyCode,
+                        Formats.parseFixedPoint(value, Fiat.SMALLEST_UNIT_EXPONENT));
+                if (rate.signum() > 0)
+                    rates.put(currencyCode, new ExchangeRate(new org.bitcoinj.utils.ExchangeRate(rate), NAME));
+            } catch (final IllegalArgumentException x) {
+                log.warn("problem parsing {} exchange rate from {}: {}", currencyCode, URL, x.getMessage());
+            }
+        }
+        reader.endObject();
+        return rates;
+    }
+}
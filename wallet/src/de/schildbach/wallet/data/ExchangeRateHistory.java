@@ -0,0 +1,258 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.bitcoinj.utils.Fiat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.util.DailyRates;
+import de.schildbach.wallet.util.Formats;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+/**
+ * Daily exchange rates of the past, for showing the fiat value of transactions that didn't record the rate at the
+ * time. There is one file per currency, consisting of fixed size records of day and rate sorted by day. Files are
+ * memory-mapped and searched in place, so looking up a rate takes O(log n) and doesn't touch the heap.
+ *
+ * Rates are backfilled in bulk from CoinGecko, at most once a day.
+ *
+ * @author Andreas Schildbach
+ */
+public class ExchangeRateHistory {
+    private final File dir;
+    private final Map<String, DailyRates> cache = new HashMap<>();
+    private final MutableLiveData<String> backfilled = new MutableLiveData<>();
+
+    /** How old a rate may be for still being used. */
+    private static final int MAX_AGE_DAYS = 7;
+    private static final HttpUrl COINGECKO_MARKET_CHART_URL = HttpUrl
+            .parse("https://api.coingecko.com/api/v3/coins/goldcoin/market_chart");
+    private static final JsonReader.Options NAMES_MARKET_CHART = JsonReader.Options.of("prices");
+
+    private static final Logger log = LoggerFactory.getLogger(ExchangeRateHistory.class);
+
+    private static ExchangeRateHistory INSTANCE;
+
+    public static ExchangeRateHistory get(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (ExchangeRateHistory.class) {
+                if (INSTANCE == null)
+                    INSTANCE = new ExchangeRateHistory(
+                            new File(context.getFilesDir(), Constants.Files.EXCHANGE_RATE_HISTORY_DIRECTORY));
+            }
+        }
+        return INSTANCE;
+    }
+
+    private ExchangeRateHistory(final File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the rate of the given currency on the day of the given time, or the closest earlier one that is not too
+     *         old, or {@code null} if there is none
+     */
+    @Nullable
+    public org.bitcoinj.utils.ExchangeRate getRate(final String currencyCode, final long time) {
+        final int day = day(time);
+        final long value;
+        synchronized (this) {
+            final DailyRates rates = rates(currencyCode);
+            if (rates == null)
+                return null;
+            final int index = rates.indexBefore(day);
+            if (index == -1 || day - rates.getDay(index) > MAX_AGE_DAYS)
+                return null;
+            value = rates.getValue(index);
+        }
+        return new org.bitcoinj.utils.ExchangeRate(Fiat.valueOf(currencyCode, value));
+    }
+
+    /**
+     * @return live data of the currency whose history was last extended, for refreshing what was shown without it
+     */
+    public LiveData<String> getBackfilled() {
+        return backfilled;
+    }
+
+    /**
+     * Fetches the rates of the given currency that are missing up to today, unless that has been tried today
+     * already. Blocks on network I/O.
+     */
+    public void maybeBackfill(final String currencyCode, final String userAgent) {
+        final long now = System.currentTimeMillis();
+        final int today = day(now);
+        final int lastDay;
+        synchronized (this) {
+            final DailyRates rates = rates(currencyCode);
+            lastDay = rates != null ? rates.getDay(rates.size() - 1) : -1;
+        }
+        if (lastDay >= today)
+            return;
+        // today's rate may not be out yet, so don't try again until tomorrow regardless of the outcome
+        final File attemptFile = attemptFile(currencyCode);
+        if (attemptFile.exists() && day(attemptFile.lastModified()) >= today)
+            return;
+        try {
+            dir.mkdirs();
+            attemptFile.createNewFile();
+            attemptFile.setLastModified(now);
+        } catch (final IOException x) {
+            log.warn("problem recording exchange rate history attempt " + attemptFile, x);
+        }
+
+        final Stopwatch watch = Stopwatch.createStarted();
+        final HttpUrl url = COINGECKO_MARKET_CHART_URL.newBuilder()
+                .addQueryParameter("vs_currency", currencyCode.toLowerCase(Locale.US))
+                .addQueryParameter("days", lastDay >= 0 ? Integer.toString(today - lastDay + 1) : "max")
+                .addQueryParameter("interval", "daily").build();
+        final Request.Builder request = new Request.Builder();
+        request.url(url);
+        request.header("User-Agent", userAgent);
+        final Call call = Constants.HTTP_CLIENT.newCall(request.build());
+        try (final Response response = call.execute()) {
+            if (!response.isSuccessful()) {
+                log.warn("http status {} when fetching exchange rate history from {}", response.code(), url);
+                return;
+            }
+            final SortedMap<Integer, Long> rates = parseMarketChart(response.body().source());
+            if (!rates.isEmpty()) {
+                put(currencyCode, rates);
+                backfilled.postValue(currencyCode);
+            }
+            watch.stop();
+            log.info("fetched {} days of {} exchange rate history from {}, took {}", rates.size(), currencyCode, url,
+                    watch);
+        } catch (final IOException | JsonDataException x) {
+            log.warn("problem fetching exchange rate history from " + url, x);
+        }
+    }
+
+    private static SortedMap<Integer, Long> parseMarketChart(final BufferedSource source) throws IOException {
+        final SortedMap<Integer, Long> rates = new TreeMap<>();
+        try (final JsonReader reader = JsonReader.of(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.selectName(NAMES_MARKET_CHART) == 0) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginArray();
+                        final long time = reader.nextLong();
+                        if (reader.peek() != JsonReader.Token.NULL) {
+                            final long value = Formats.parseFixedPoint(reader.nextString(),
+                                    Fiat.SMALLEST_UNIT_EXPONENT);
+                            // within a day, the latest price wins
+                            if (value > 0)
+                                rates.put(day(time), value);
+                        } else {
+                            reader.skipValue();
+                        }
+                        reader.endArray();
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipName();
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (final IllegalArgumentException x) {
+            throw new IOException(x);
+        }
+        return rates;
+    }
+
+    /**
+     * Merges the given rates, keyed by day, into the history of the given currency.
+     */
+    private synchronized void put(final String currencyCode, final SortedMap<Integer, Long> rates) throws IOException {
+        final ByteBuffer records = DailyRates.merge(rates(currencyCode), rates).buffer();
+
+        dir.mkdirs();
+        final File file = file(currencyCode);
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try (final FileOutputStream os = new FileOutputStream(tempFile)) {
+            os.getChannel().write(records);
+        } catch (final IOException x) {
+            tempFile.delete();
+            throw x;
+        }
+        if (!tempFile.renameTo(file))
+            throw new IOException("cannot rename " + tempFile);
+        cache.remove(currencyCode);
+    }
+
+    @Nullable
+    private DailyRates rates(final String currencyCode) {
+        DailyRates rates = cache.get(currencyCode);
+        if (rates == null) {
+            final File file = file(currencyCode);
+            if (file.length() < DailyRates.RECORD_SIZE)
+                return null;
+            try (final FileChannel channel = new FileInputStream(file).getChannel()) {
+                rates = DailyRates.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (final IOException x) {
+                log.warn("problem mapping exchange rate history " + file, x);
+                return null;
+            }
+            cache.put(currencyCode, rates);
+        }
+        return rates;
+    }
+
+    private File file(final String currencyCode) {
+        return new File(dir, currencyCode);
+    }
+
+    private File attemptFile(final String currencyCode) {
+        return new File(dir, currencyCode + ".attempt");
+    }
+
+    private static int day(final long time) {
+        return (int) (time / DateUtils.DAY_IN_MILLIS);
+    }
+}
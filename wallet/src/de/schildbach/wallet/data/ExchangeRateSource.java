@@ -0,0 +1,46 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.io.IOException;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+
+/**
+ * A place exchange rates can be fetched from via HTTP.
+ *
+ * @author Andreas Schildbach
+ */
+public interface ExchangeRateSource {
+    /**
+     * @return name shown to the user as the source of rates
+     */
+    String getName();
+
+    HttpUrl getUrl();
+
+    /**
+     * @return rates keyed by currency code, or {@code null} if the response does not contain the rates expected
+     */
+    @Nullable
+    Map<String, ExchangeRate> parse(ResponseBody body) throws IOException;
+}
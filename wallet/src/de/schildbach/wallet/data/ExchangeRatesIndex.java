@@ -0,0 +1,121 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.Locale;
+
+import de.schildbach.wallet.util.GenericUtils;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Exchange rates laid out for fast lookup: one row per currency in the order of the currency codes, with lower-cased
+ * code, symbol and localized name precomputed for searching. Built once per set of rates, immutable after that.
+ *
+ * @author Andreas Schildbach
+ */
+final class ExchangeRatesIndex {
+    final Locale locale;
+    private final String[] currencyCodes;
+    private final long[] rateCoins;
+    private final long[] rateFiats;
+    private final String[] sources;
+    private final String[] searchCodes;
+    private final String[] searchSymbols;
+    private final String[] searchNames;
+
+    ExchangeRatesIndex(final Collection<ExchangeRate> rates, final Locale locale) {
+        this.locale = locale;
+        final int size = rates.size();
+        currencyCodes = new String[size];
+        rateCoins = new long[size];
+        rateFiats = new long[size];
+        sources = new String[size];
+        searchCodes = new String[size];
+        searchSymbols = new String[size];
+        searchNames = new String[size];
+        int row = 0;
+        for (final ExchangeRate rate : rates) {
+            final String currencyCode = rate.getCurrencyCode();
+            currencyCodes[row] = currencyCode;
+            rateCoins[row] = rate.rate.coin.value;
+            rateFiats[row] = rate.rate.fiat.value;
+            sources[row] = rate.source;
+            searchCodes[row] = currencyCode.toLowerCase(Locale.US);
+            searchSymbols[row] = GenericUtils.currencySymbol(currencyCode).toLowerCase(Locale.US);
+            searchNames[row] = displayName(currencyCode, locale).toLowerCase(locale);
+            row++;
+        }
+    }
+
+    public int size() {
+        return currencyCodes.length;
+    }
+
+    public String getCurrencyCode(final int row) {
+        return currencyCodes[row];
+    }
+
+    public long getRateCoin(final int row) {
+        return rateCoins[row];
+    }
+
+    public long getRateFiat(final int row) {
+        return rateFiats[row];
+    }
+
+    @Nullable
+    public String getSource(final int row) {
+        return sources[row];
+    }
+
+    /**
+     * @return row of the given currency, or -1 if there is none
+     */
+    public int indexOf(final String currencyCode) {
+        final int row = Arrays.binarySearch(currencyCodes, currencyCode);
+        return row >= 0 ? row : -1;
+    }
+
+    /**
+     * @return rows whose currency code, symbol or name contain the query, ignoring case. The query is lower-cased
+     *         the same way as each column, so that e.g. a Turkish dotless i doesn't get in the way of matching codes.
+     */
+    public int[] search(final String query) {
+        final String asciiQuery = query.toLowerCase(Locale.US);
+        final String localizedQuery = query.toLowerCase(locale);
+        final int[] rows = new int[currencyCodes.length];
+        int count = 0;
+        for (int row = 0; row < currencyCodes.length; row++)
+            if (searchCodes[row].contains(asciiQuery) || searchSymbols[row].contains(asciiQuery)
+                    || searchNames[row].contains(localizedQuery))
+                rows[count++] = row;
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    private static String displayName(final String currencyCode, final Locale locale) {
+        try {
+            return Currency.getInstance(currencyCode).getDisplayName(locale);
+        } catch (final IllegalArgumentException x) {
+            return currencyCode;
+        }
+    }
+}
@@ -17,51 +17,25 @@
 
 package de.schildbach.wallet.data;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.math.BigDecimal;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Arrays;
-import java.util.Currency;
-import java.util.Iterator;
-import java.util.Locale;
-import java.util.Map;
-import java.util.TreeMap;
-
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.utils.Fiat;
-import org.bitcoinj.utils.MonetaryFormat;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Stopwatch;
 
-import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.Logging;
-import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.util.GenericUtils;
 
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.AbstractCursor;
 import android.database.Cursor;
-import android.database.MatrixCursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.DateUtils;
 import androidx.annotation.Nullable;
 
-import okhttp3.Call;
-import okhttp3.HttpUrl;
-import okhttp3.Request;
-import okhttp3.Response;
-
 /**
  * @author Andreas Schildbach
  */
@@ -75,18 +49,7 @@ public class ExchangeRatesProvider extends ContentProvider {
     public static final String QUERY_PARAM_Q = "q";
     private static final String QUERY_PARAM_OFFLINE = "offline";
 
-    private Configuration config;
-    private String userAgent;
-
-    @Nullable
-    private Map<String, ExchangeRate> exchangeRates = null;
-    private long lastUpdated = 0;
-
-    private static final HttpUrl BITCOINAVERAGE_URL = HttpUrl
-            .parse("https://apiv2.bitcoinaverage.com/indices/global/ticker/short?crypto=BTC");
-    private static final String BITCOINAVERAGE_SOURCE = "BitcoinAverage.com";
-
-    private static final long UPDATE_FREQ_MS = 10 * DateUtils.MINUTE_IN_MILLIS;
+    private ExchangeRatesRepository repository;
 
     private static final Logger log = LoggerFactory.getLogger(ExchangeRatesProvider.class);
 
@@ -99,15 +62,7 @@ public class ExchangeRatesProvider extends ContentProvider {
 
         final Context context = getContext();
         Logging.init(context.getFilesDir());
-        final WalletApplication application = (WalletApplication) context.getApplicationContext();
-        this.config = application.getConfiguration();
-        this.userAgent = WalletApplication.httpUserAgent(application.packageInfo().versionName);
-
-        final ExchangeRate cachedExchangeRate = config.getCachedExchangeRate();
-        if (cachedExchangeRate != null) {
-            exchangeRates = new TreeMap<String, ExchangeRate>();
-            exchangeRates.put(cachedExchangeRate.getCurrencyCode(), cachedExchangeRate);
-        }
+        this.repository = ExchangeRatesRepository.get(context);
 
         watch.stop();
         log.info("{}.onCreate() took {}", getClass().getSimpleName(), watch);
@@ -124,82 +79,127 @@ public class ExchangeRatesProvider extends ContentProvider {
     @Override
     public Cursor query(final Uri uri, final String[] projection, final String selection, final String[] selectionArgs,
             final String sortOrder) {
-        final long now = System.currentTimeMillis();
-
         final boolean offline = uri.getQueryParameter(QUERY_PARAM_OFFLINE) != null;
+        if (!offline)
+            repository.maybeRefresh();
+
+        final ExchangeRatesIndex index = repository.getIndex();
+        final int[] rows;
+        if (index == null) {
+            // stays empty until the first rates are in, observers are notified then
+            rows = new int[0];
+        } else if (selection == null) {
+            rows = null;
+        } else if (selection.equals(QUERY_PARAM_Q)) {
+            rows = index.search(selectionArgs[0]);
+        } else if (selection.equals(KEY_CURRENCY_CODE)) {
+            final ExchangeRate exchangeRate = repository.bestRate(selectionArgs[0]);
+            final int row = exchangeRate != null ? index.indexOf(exchangeRate.getCurrencyCode()) : -1;
+            rows = row >= 0 ? new int[] { row } : new int[0];
+        } else {
+            rows = new int[0];
+        }
 
-        if (!offline && (lastUpdated == 0 || now - lastUpdated > UPDATE_FREQ_MS)) {
-            Map<String, ExchangeRate> newExchangeRates = requestExchangeRates();
-
-            if (newExchangeRates != null) {
-                exchangeRates = newExchangeRates;
-                lastUpdated = now;
+        final Cursor cursor = new IndexCursor(index, rows);
+        cursor.setNotificationUri(getContext().getContentResolver(),
+                contentUri(getContext().getPackageName(), false));
+        return cursor;
+    }
 
-                final ExchangeRate exchangeRateToCache = bestExchangeRate(config.getExchangeCurrencyCode());
-                if (exchangeRateToCache != null)
-                    config.setCachedExchangeRate(exchangeRateToCache);
-            }
+    /**
+     * Cursor over rows of the exchange rates index, without copying them.
+     */
+    private static class IndexCursor extends AbstractCursor {
+        private static final String[] COLUMNS = { BaseColumns._ID, KEY_CURRENCY_CODE, KEY_RATE_COIN, KEY_RATE_FIAT,
+                KEY_SOURCE };
+
+        @Nullable
+        private final ExchangeRatesIndex index;
+        @Nullable
+        private final int[] rows;
+
+        /**
+         * @param rows
+         *            rows of the index to include, or {@code null} for all of them
+         */
+        public IndexCursor(@Nullable final ExchangeRatesIndex index, @Nullable final int[] rows) {
+            this.index = index;
+            this.rows = rows;
         }
 
-        if (exchangeRates == null)
-            return null;
+        @Override
+        public int getCount() {
+            return rows != null ? rows.length : index.size();
+        }
 
-        final MatrixCursor cursor = new MatrixCursor(
-                new String[] { BaseColumns._ID, KEY_CURRENCY_CODE, KEY_RATE_COIN, KEY_RATE_FIAT, KEY_SOURCE });
+        @Override
+        public String[] getColumnNames() {
+            return COLUMNS;
+        }
 
-        if (selection == null) {
-            for (final Map.Entry<String, ExchangeRate> entry : exchangeRates.entrySet()) {
-                final ExchangeRate exchangeRate = entry.getValue();
-                final org.bitcoinj.utils.ExchangeRate rate = exchangeRate.rate;
-                final String currencyCode = exchangeRate.getCurrencyCode();
-                cursor.newRow().add(currencyCode.hashCode()).add(currencyCode).add(rate.coin.value).add(rate.fiat.value)
-                        .add(exchangeRate.source);
+        @Override
+        public String getString(final int column) {
+            final int row = row();
+            switch (column) {
+            case 1:
+                return index.getCurrencyCode(row);
+            case 4:
+                return index.getSource(row);
+            default:
+                return Long.toString(getLong(column));
             }
-        } else if (selection.equals(QUERY_PARAM_Q)) {
-            final String selectionArg = selectionArgs[0].toLowerCase(Locale.US);
-            for (final Map.Entry<String, ExchangeRate> entry : exchangeRates.entrySet()) {
-                final ExchangeRate exchangeRate = entry.getValue();
-                final org.bitcoinj.utils.ExchangeRate rate = exchangeRate.rate;
-                final String currencyCode = exchangeRate.getCurrencyCode();
-                final String currencySymbol = GenericUtils.currencySymbol(currencyCode);
-                if (currencyCode.toLowerCase(Locale.US).contains(selectionArg)
-                        || currencySymbol.toLowerCase(Locale.US).contains(selectionArg))
-                    cursor.newRow().add(currencyCode.hashCode()).add(currencyCode).add(rate.coin.value)
-                            .add(rate.fiat.value).add(exchangeRate.source);
-            }
-        } else if (selection.equals(KEY_CURRENCY_CODE)) {
-            final String selectionArg = selectionArgs[0];
-            final ExchangeRate exchangeRate = bestExchangeRate(selectionArg);
-            if (exchangeRate != null) {
-                final org.bitcoinj.utils.ExchangeRate rate = exchangeRate.rate;
-                final String currencyCode = exchangeRate.getCurrencyCode();
-                cursor.newRow().add(currencyCode.hashCode()).add(currencyCode).add(rate.coin.value).add(rate.fiat.value)
-                        .add(exchangeRate.source);
+        }
+
+        @Override
+        public long getLong(final int column) {
+            final int row = row();
+            switch (column) {
+            case 0:
+                return index.getCurrencyCode(row).hashCode();
+            case 2:
+                return index.getRateCoin(row);
+            case 3:
+                return index.getRateFiat(row);
+            default:
+                throw new IllegalArgumentException("not a number column: " + column);
             }
         }
 
-        return cursor;
-    }
+        @Override
+        public int getInt(final int column) {
+            return (int) getLong(column);
+        }
 
-    private ExchangeRate bestExchangeRate(final String currencyCode) {
-        ExchangeRate rate = currencyCode != null ? exchangeRates.get(currencyCode) : null;
-        if (rate != null)
-            return rate;
+        @Override
+        public short getShort(final int column) {
+            return (short) getLong(column);
+        }
 
-        final String defaultCode = defaultCurrencyCode();
-        rate = defaultCode != null ? exchangeRates.get(defaultCode) : null;
+        @Override
+        public float getFloat(final int column) {
+            return getLong(column);
+        }
 
-        if (rate != null)
-            return rate;
+        @Override
+        public double getDouble(final int column) {
+            return getLong(column);
+        }
 
-        return exchangeRates.get(Constants.DEFAULT_EXCHANGE_CURRENCY);
-    }
+        @Override
+        public int getType(final int column) {
+            if (column == 1 || column == 4)
+                return isNull(column) ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+            return FIELD_TYPE_INTEGER;
+        }
 
-    private String defaultCurrencyCode() {
-        try {
-            return Currency.getInstance(Locale.getDefault()).getCurrencyCode();
-        } catch (final IllegalArgumentException x) {
-            return null;
+        @Override
+        public boolean isNull(final int column) {
+            return column == 4 && index.getSource(row()) == null;
+        }
+
+        private int row() {
+            checkPosition();
+            return rows != null ? rows[getPosition()] : getPosition();
         }
     }
 
@@ -234,69 +234,4 @@ public class ExchangeRatesProvider extends ContentProvider {
     public String getType(final Uri uri) {
         throw new UnsupportedOperationException();
     }
-
-    private Map<String, ExchangeRate> requestExchangeRates() {
-        final Stopwatch watch = Stopwatch.createStarted();
-
-        final Request.Builder request = new Request.Builder();
-        request.url(COINGECKO_URL);
-        request.header("User-Agent", userAgent);
-
-        final Call call = Constants.HTTP_CLIENT.newCall(request.build());
-        try {
-            final Response response = call.execute();
-            if (response.isSuccessful()) {
-                final String content = response.body().string();
-                final JSONObject head = new JSONObject(content);
-                final Map<String, ExchangeRate> rates = new TreeMap<String, ExchangeRate>();
-
-                //check for correct information
-                if(head.getString("id").equals("goldcoin")) {
-                    JSONObject marketData = head.getJSONObject("market_data");
-                    JSONObject currentPrice = marketData.getJSONObject("current_price");
-
-                    for (final Iterator<String> i = currentPrice.keys(); i.hasNext(); ) {
-                        final String currencyCode = i.next();
-                        final String fiatCurrencyCode = currencyCode.toUpperCase();
-                        if (!fiatCurrencyCode.equals(MonetaryFormat.CODE_BTC)
-                                && !fiatCurrencyCode.equals(MonetaryFormat.CODE_MBTC)
-                                && !fiatCurrencyCode.equals(MonetaryFormat.CODE_UBTC)) {
-                            final String exchangeRate = currentPrice.getString(currencyCode);//head.getJSONObject(currencyCode);
-                            try {
-                                final Fiat rate = parseFiatInexact(fiatCurrencyCode, exchangeRate);
-                                if (rate.signum() > 0)
-                                    rates.put(fiatCurrencyCode, new ExchangeRate(
-                                            new org.bitcoinj.utils.ExchangeRate(rate), COINGECKO_SOURCE));
-                            } catch (final IllegalArgumentException x) {
-                                log.warn("problem fetching {} exchange rate from {}: {}", currencyCode,
-                                        COINGECKO_URL, x.getMessage());
-                            }
-                        }
-                    }
-
-                    watch.stop();
-                    log.info("fetched exchange rates from {}, {} chars, took {}", COINGECKO_URL, content.length(),
-                            watch);
-
-                    return rates;
-                }
-            } else {
-                log.warn("http status {} when fetching exchange rates from {}", response.code(), COINGECKO_URL);
-            }
-        } catch (final Exception x) {
-            log.warn("problem fetching exchange rates from " + COINGECKO_URL, x);
-        }
-
-        return null;
-    }
-
-    // backport from bitcoinj 0.15
-    private static Fiat parseFiatInexact(final String currencyCode, final String str) {
-        final long val = new BigDecimal(str).movePointRight(Fiat.SMALLEST_UNIT_EXPONENT).longValue();
-        return Fiat.valueOf(currencyCode, val);
-    }
-
-    private static String COINGECKO_URL = "https://api.coingecko.com/api/v3/coins/goldcoin?localization=false&community_data=false&developer_data=false&sparkline=false";
-    private static final String COINGECKO_SOURCE = "CoinGecko.com";
-
 }
@@ -0,0 +1,387 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.utils.Fiat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.schildbach.wallet.Configuration;
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import androidx.annotation.Nullable;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Keeps the table of exchange rates, persisted to disk so it can be served right away after a cold start. Rates are
+ * refreshed in the background, trying the sources in order until one delivers. Requests to the source the table came
+ * from are conditional, so an unchanged table costs just a round trip.
+ *
+ * @author Andreas Schildbach
+ */
+public class ExchangeRatesRepository {
+    private final Context context;
+    private final Configuration config;
+    private final String userAgent;
+    private final File file;
+    private final List<ExchangeRateSource> sources;
+    private final ExchangeRateHistory history;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("exchange rates").setDaemon(true).build());
+
+    private boolean loaded = false;
+    private boolean refreshing = false;
+    @Nullable
+    private Map<String, ExchangeRate> rates = null;
+    @Nullable
+    private ExchangeRatesIndex index = null;
+    private long lastUpdated = 0;
+    @Nullable
+    private String source = null;
+    @Nullable
+    private String etag = null;
+    @Nullable
+    private String lastModified = null;
+
+    private long retryAt = 0;
+    private long retryBackoffMs = MIN_RETRY_BACKOFF_MS;
+
+    private static final long UPDATE_FREQ_MS = 10 * DateUtils.MINUTE_IN_MILLIS;
+    private static final long MIN_RETRY_BACKOFF_MS = 15 * DateUtils.SECOND_IN_MILLIS;
+
+    private static final Logger log = LoggerFactory.getLogger(ExchangeRatesRepository.class);
+
+    private static ExchangeRatesRepository INSTANCE;
+
+    public static ExchangeRatesRepository get(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (ExchangeRatesRepository.class) {
+                if (INSTANCE == null)
+                    INSTANCE = new ExchangeRatesRepository((WalletApplication) context.getApplicationContext());
+            }
+        }
+        return INSTANCE;
+    }
+
+    private ExchangeRatesRepository(final WalletApplication application) {
+        this.context = application;
+        this.config = application.getConfiguration();
+        this.userAgent = WalletApplication.httpUserAgent(application.packageInfo().versionName);
+        this.file = new File(application.getFilesDir(), Constants.Files.EXCHANGE_RATES_FILENAME);
+        this.sources = Arrays.<ExchangeRateSource> asList(new CoinGeckoExchangeRateSource());
+        this.history = ExchangeRateHistory.get(application);
+    }
+
+    /**
+     * @return all rates keyed by currency code, or {@code null} if there are none yet. Loads them from disk if needed,
+     *         but never waits for the network.
+     */
+    @Nullable
+    public synchronized Map<String, ExchangeRate> getRates() {
+        load();
+        return rates;
+    }
+
+    /**
+     * @return an index over all rates, or {@code null} if there are none yet. It is rebuilt only when the rates or the
+     *         default locale change.
+     */
+    @Nullable
+    synchronized ExchangeRatesIndex getIndex() {
+        load();
+        if (rates == null)
+            return null;
+        final Locale locale = Locale.getDefault();
+        if (index == null || !index.locale.equals(locale)) {
+            final Stopwatch watch = Stopwatch.createStarted();
+            index = new ExchangeRatesIndex(rates.values(), locale);
+            watch.stop();
+            log.info("indexed {} exchange rates, took {}", index.size(), watch);
+        }
+        return index;
+    }
+
+    /**
+     * @return the rate for the given currency, falling back to the currency of the default locale and then to the
+     *         app's default currency
+     */
+    @Nullable
+    public synchronized ExchangeRate bestRate(@Nullable final String currencyCode) {
+        load();
+        if (rates == null)
+            return null;
+
+        ExchangeRate rate = currencyCode != null ? rates.get(currencyCode) : null;
+        if (rate != null)
+            return rate;
+
+        final String defaultCode = defaultCurrencyCode();
+        rate = defaultCode != null ? rates.get(defaultCode) : null;
+        if (rate != null)
+            return rate;
+
+        return rates.get(Constants.DEFAULT_EXCHANGE_CURRENCY);
+    }
+
+    /**
+     * Refreshes the rates in the background, if they are out of date and no refresh is running already. Content
+     * observers of the exchange rates provider are notified once new rates are in. The history of the selected
+     * currency is brought up to date along the way. After a failed refresh, retries are backed off exponentially up
+     * to the regular update frequency.
+     */
+    public synchronized void maybeRefresh() {
+        final long now = System.currentTimeMillis();
+        if (refreshing || now - lastUpdated < UPDATE_FREQ_MS || now < retryAt)
+            return;
+        refreshing = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean refreshed = false;
+                try {
+                    refreshed = refresh();
+                    backfill();
+                } finally {
+                    synchronized (ExchangeRatesRepository.this) {
+                        refreshing = false;
+                        if (refreshed) {
+                            retryBackoffMs = MIN_RETRY_BACKOFF_MS;
+                        } else {
+                            retryAt = System.currentTimeMillis() + retryBackoffMs;
+                            log.info("retrying exchange rates in {} seconds",
+                                    retryBackoffMs / DateUtils.SECOND_IN_MILLIS);
+                            retryBackoffMs = Math.min(retryBackoffMs * 2, UPDATE_FREQ_MS);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Brings the history of the selected currency up to date in the background, for when the selection changed.
+     */
+    public void maybeBackfill() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                backfill();
+            }
+        });
+    }
+
+    private void backfill() {
+        final ExchangeRate selected = bestRate(config.getExchangeCurrencyCode());
+        if (selected != null)
+            history.maybeBackfill(selected.getCurrencyCode(), userAgent);
+    }
+
+    /**
+     * @return {@code true} if the rates are up to date now
+     */
+    private boolean refresh() {
+        final String cachedSource, cachedEtag, cachedLastModified;
+        synchronized (this) {
+            load();
+            cachedSource = source;
+            cachedEtag = etag;
+            cachedLastModified = lastModified;
+        }
+
+        for (final ExchangeRateSource source : sources) {
+            final Stopwatch watch = Stopwatch.createStarted();
+            final boolean conditional = source.getName().equals(cachedSource);
+            final Request.Builder request = new Request.Builder();
+            request.url(source.getUrl());
+            request.header("User-Agent", userAgent);
+            if (conditional && cachedEtag != null)
+                request.header("If-None-Match", cachedEtag);
+            if (conditional && cachedLastModified != null)
+                request.header("If-Modified-Since", cachedLastModified);
+
+            final Call call = Constants.HTTP_CLIENT.newCall(request.build());
+            try (final Response response = call.execute()) {
+                if (response.code() == 304 && conditional) {
+                    watch.stop();
+                    log.info("exchange rates from {} not modified, took {}", source.getUrl(), watch);
+                    final Snapshot snapshot;
+                    synchronized (this) {
+                        lastUpdated = System.currentTimeMillis();
+                        snapshot = new Snapshot();
+                    }
+                    save(snapshot);
+                    return true;
+                } else if (response.isSuccessful()) {
+                    final Map<String, ExchangeRate> newRates = source.parse(response.body());
+                    if (newRates != null && !newRates.isEmpty()) {
+                        watch.stop();
+                        log.info("fetched {} exchange rates from {}, took {}", newRates.size(), source.getUrl(),
+                                watch);
+                        final Snapshot snapshot;
+                        synchronized (this) {
+                            rates = Collections.unmodifiableMap(new TreeMap<>(newRates));
+                            index = null;
+                            lastUpdated = System.currentTimeMillis();
+                            this.source = source.getName();
+                            etag = response.header("ETag");
+                            lastModified = response.header("Last-Modified");
+                            snapshot = new Snapshot();
+                        }
+                        save(snapshot);
+                        final ExchangeRate exchangeRateToCache = bestRate(config.getExchangeCurrencyCode());
+                        if (exchangeRateToCache != null)
+                            config.setCachedExchangeRate(exchangeRateToCache);
+                        context.getContentResolver()
+                                .notifyChange(ExchangeRatesProvider.contentUri(context.getPackageName(), false), null);
+                        return true;
+                    }
+                    log.warn("unexpected content when fetching exchange rates from {}", source.getUrl());
+                } else {
+                    log.warn("http status {} when fetching exchange rates from {}", response.code(),
+                            source.getUrl());
+                }
+            } catch (final IOException x) {
+                log.warn("problem fetching exchange rates from " + source.getUrl(), x);
+            }
+        }
+        return false;
+    }
+
+    private void load() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        if (!file.exists()) {
+            // migrate from the single rate cached in the configuration
+            final ExchangeRate cachedExchangeRate = config.getCachedExchangeRate();
+            if (cachedExchangeRate != null)
+                rates = Collections.singletonMap(cachedExchangeRate.getCurrencyCode(), cachedExchangeRate);
+            return;
+        }
+
+        final Stopwatch watch = Stopwatch.createStarted();
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            final Splitter splitter = Splitter.on('\t');
+            final List<String> header = splitter.splitToList(reader.readLine());
+            final Map<String, ExchangeRate> rates = new TreeMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    final List<String> fields = splitter.splitToList(line);
+                    final String currencyCode = fields.get(0);
+                    final Coin rateCoin = Coin.valueOf(Long.parseLong(fields.get(1)));
+                    final Fiat rateFiat = Fiat.valueOf(currencyCode, Long.parseLong(fields.get(2)));
+                    rates.put(currencyCode, new ExchangeRate(
+                            new org.bitcoinj.utils.ExchangeRate(rateCoin, rateFiat),
+                            Strings.emptyToNull(fields.get(3))));
+                } catch (final IllegalArgumentException | IndexOutOfBoundsException x) {
+                    log.info("ignoring exchange rates line: '{}'", line);
+                }
+            }
+            this.rates = Collections.unmodifiableMap(rates);
+            this.lastUpdated = Long.parseLong(header.get(0));
+            this.source = Strings.emptyToNull(header.get(1));
+            this.etag = Strings.emptyToNull(header.get(2));
+            this.lastModified = Strings.emptyToNull(header.get(3));
+            watch.stop();
+            log.info("loaded {} exchange rates from '{}', took {}", rates.size(), file, watch);
+        } catch (final IOException | RuntimeException x) {
+            log.warn("problem loading exchange rates", x);
+        }
+    }
+
+    /**
+     * State to be saved, taken under the lock so that the file can be written without holding it.
+     */
+    private final class Snapshot {
+        final long lastUpdated = ExchangeRatesRepository.this.lastUpdated;
+        @Nullable
+        final String source = ExchangeRatesRepository.this.source;
+        @Nullable
+        final String etag = ExchangeRatesRepository.this.etag;
+        @Nullable
+        final String lastModified = ExchangeRatesRepository.this.lastModified;
+        @Nullable
+        final Map<String, ExchangeRate> rates = ExchangeRatesRepository.this.rates;
+    }
+
+    /**
+     * Only called from the executor, so saves don't overtake each other.
+     */
+    private void save(final Snapshot snapshot) {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            writer.write(snapshot.lastUpdated + "\t" + Strings.nullToEmpty(snapshot.source) + "\t"
+                    + Strings.nullToEmpty(snapshot.etag) + "\t" + Strings.nullToEmpty(snapshot.lastModified) + "\n");
+            if (snapshot.rates != null) {
+                for (final ExchangeRate exchangeRate : snapshot.rates.values()) {
+                    final org.bitcoinj.utils.ExchangeRate rate = exchangeRate.rate;
+                    writer.write(exchangeRate.getCurrencyCode() + "\t" + rate.coin.value + "\t" + rate.fiat.value
+                            + "\t" + Strings.nullToEmpty(exchangeRate.source) + "\n");
+                }
+            }
+        } catch (final IOException x) {
+            log.warn("problem saving exchange rates", x);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file))
+            log.warn("problem saving exchange rates, cannot rename {}", tempFile);
+    }
+
+    private static String defaultCurrencyCode() {
+        try {
+            return Currency.getInstance(Locale.getDefault()).getCurrencyCode();
+        } catch (final IllegalArgumentException x) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+/**
+ * @author Andreas Schildbach
+ */
+@Dao
+public abstract class TransactionIndexDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract void insertOrUpdate(List<TransactionIndexEntry> entries);
+
+    @Query("UPDATE transaction_index SET label = (SELECT label FROM address_book WHERE address_book.address = transaction_index.address) WHERE hash IN (:hashes)")
+    protected abstract void resolveLabels(List<String> hashes);
+
+    @Query("DELETE FROM transaction_index WHERE hash IN (:hashes)")
+    protected abstract void delete(List<String> hashes);
+
+    @Query("DELETE FROM transaction_index")
+    public abstract void deleteAll();
+
+    /**
+     * Inserts or replaces the given entries, resolving their labels from the address book, and removes the entries
+     * of the given hashes.
+     */
+    @Transaction
+    public void update(final List<TransactionIndexEntry> entries, final Collection<String> removedHashes) {
+        if (!entries.isEmpty()) {
+            insertOrUpdate(entries);
+            final List<String> hashes = new ArrayList<>(entries.size());
+            for (final TransactionIndexEntry entry : entries)
+                hashes.add(entry.getHash());
+            for (final List<String> chunk : Lists.partition(hashes, MAX_BIND_VARIABLES))
+                resolveLabels(chunk);
+        }
+        if (!removedHashes.isEmpty())
+            for (final List<String> chunk : Lists.partition(new ArrayList<>(removedHashes), MAX_BIND_VARIABLES))
+                delete(chunk);
+    }
+
+    // SQLite limits the number of host parameters per statement
+    private static final int MAX_BIND_VARIABLES = 500;
+
+    @Query("SELECT * FROM transaction_index")
+    public abstract List<TransactionIndexEntry> getAllUnordered();
+
+    @Query("SELECT COUNT(*) FROM transaction_index")
+    public abstract LiveData<Integer> getCount();
+
+    // The list order is: pending first, then newest first, then by hash, all descending so that the indexes on
+    // (pending, update_time, hash) and (direction, pending, update_time, hash) can be walked backwards without
+    // sorting. Positions are seeked within their pending group, and the list continues into the other group if
+    // needed. There are separate queries for all directions and for one direction, each able to use its index.
+
+    /**
+     * @param direction
+     *            direction of entries to list, or {@code null} for all
+     */
+    @Transaction
+    public List<TransactionIndexEntry> getFirst(final Integer direction, final int limit) {
+        final List<TransactionIndexEntry> entries = new ArrayList<>(getGroupFirst(direction, true, limit));
+        if (entries.size() < limit)
+            entries.addAll(getGroupFirst(direction, false, limit - entries.size()));
+        return entries;
+    }
+
+    /** Entries from the given position on, including the entry at that position. */
+    @Transaction
+    public List<TransactionIndexEntry> getFrom(final Integer direction, final boolean pending, final long updateTime,
+            final String hash, final int limit) {
+        final List<TransactionIndexEntry> entries = new ArrayList<>(direction == null
+                ? getGroupFrom(pending, updateTime, hash, limit)
+                : getGroupFrom(direction, pending, updateTime, hash, limit));
+        if (pending && entries.size() < limit)
+            entries.addAll(getGroupFirst(direction, false, limit - entries.size()));
+        return entries;
+    }
+
+    /** Entries after the given position. */
+    @Transaction
+    public List<TransactionIndexEntry> getAfter(final Integer direction, final boolean pending, final long updateTime,
+            final String hash, final int limit) {
+        final List<TransactionIndexEntry> entries = new ArrayList<>(direction == null
+                ? getGroupAfter(pending, updateTime, hash, limit)
+                : getGroupAfter(direction, pending, updateTime, hash, limit));
+        if (pending && entries.size() < limit)
+            entries.addAll(getGroupFirst(direction, false, limit - entries.size()));
+        return entries;
+    }
+
+    /** Entries before the given position, closest first. */
+    @Transaction
+    public List<TransactionIndexEntry> getBefore(final Integer direction, final boolean pending,
+            final long updateTime, final String hash, final int limit) {
+        final List<TransactionIndexEntry> entries = new ArrayList<>(direction == null
+                ? getGroupBefore(pending, updateTime, hash, limit)
+                : getGroupBefore(direction, pending, updateTime, hash, limit));
+        if (!pending && entries.size() < limit)
+            entries.addAll(direction == null ? getGroupLast(true, limit - entries.size())
+                    : getGroupLast(direction, true, limit - entries.size()));
+        return entries;
+    }
+
+    private List<TransactionIndexEntry> getGroupFirst(final Integer direction, final boolean pending,
+            final int limit) {
+        return direction == null ? getGroupFirst(pending, limit) : getGroupFirst(direction.intValue(), pending, limit);
+    }
+
+    @Query("SELECT * FROM transaction_index WHERE pending = :pending "
+            + "ORDER BY update_time DESC, hash DESC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupFirst(boolean pending, int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE direction = :direction AND pending = :pending "
+            + "ORDER BY update_time DESC, hash DESC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupFirst(int direction, boolean pending, int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE pending = :pending "
+            + "ORDER BY update_time ASC, hash ASC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupLast(boolean pending, int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE direction = :direction AND pending = :pending "
+            + "ORDER BY update_time ASC, hash ASC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupLast(int direction, boolean pending, int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE pending = :pending AND update_time <= :updateTime "
+            + "AND (update_time < :updateTime OR hash <= :hash) ORDER BY update_time DESC, hash DESC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupFrom(boolean pending, long updateTime, String hash,
+            int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE direction = :direction AND pending = :pending "
+            + "AND update_time <= :updateTime AND (update_time < :updateTime OR hash <= :hash) "
+            + "ORDER BY update_time DESC, hash DESC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupFrom(int direction, boolean pending, long updateTime,
+            String hash, int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE pending = :pending AND update_time <= :updateTime "
+            + "AND (update_time < :updateTime OR hash < :hash) ORDER BY update_time DESC, hash DESC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupAfter(boolean pending, long updateTime, String hash,
+            int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE direction = :direction AND pending = :pending "
+            + "AND update_time <= :updateTime AND (update_time < :updateTime OR hash < :hash) "
+            + "ORDER BY update_time DESC, hash DESC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupAfter(int direction, boolean pending, long updateTime,
+            String hash, int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE pending = :pending AND update_time >= :updateTime "
+            + "AND (update_time > :updateTime OR hash > :hash) ORDER BY update_time ASC, hash ASC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupBefore(boolean pending, long updateTime, String hash,
+            int limit);
+
+    @Query("SELECT * FROM transaction_index WHERE direction = :direction AND pending = :pending "
+            + "AND update_time >= :updateTime AND (update_time > :updateTime OR hash > :hash) "
+            + "ORDER BY update_time ASC, hash ASC LIMIT :limit")
+    protected abstract List<TransactionIndexEntry> getGroupBefore(int direction, boolean pending, long updateTime,
+            String hash, int limit);
+}
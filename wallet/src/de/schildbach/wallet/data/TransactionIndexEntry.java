@@ -0,0 +1,151 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.Date;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Transaction.Purpose;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.wallet.Wallet;
+
+import de.schildbach.wallet.util.TransactionAnalysis;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Compact, persistent summary of a wallet transaction. Used for paging through the transaction history without
+ * materializing all transactions.
+ *
+ * @author Andreas Schildbach
+ */
+@Entity(tableName = "transaction_index", indices = { @Index({ "pending", "update_time", "hash" }),
+        @Index({ "direction", "pending", "update_time", "hash" }) })
+public class TransactionIndexEntry {
+    public static final int DIRECTION_RECEIVED = 0;
+    public static final int DIRECTION_SENT = 1;
+    public static final int DIRECTION_INTERNAL = 2;
+
+    @NonNull
+    @PrimaryKey
+    @ColumnInfo(name = "hash")
+    private String hash;
+
+    @ColumnInfo(name = "update_time")
+    private long updateTime;
+
+    @ColumnInfo(name = "value")
+    private long value;
+
+    @ColumnInfo(name = "direction")
+    private int direction;
+
+    @ColumnInfo(name = "confidence_type")
+    private int confidenceType;
+
+    @ColumnInfo(name = "pending")
+    private boolean pending;
+
+    @ColumnInfo(name = "address")
+    private String address;
+
+    /** Kept in sync with the address book by triggers, see {@link AppDatabase}. */
+    @ColumnInfo(name = "label")
+    private String label;
+
+    public TransactionIndexEntry(final String hash, final long updateTime, final long value, final int direction,
+            final int confidenceType, final boolean pending, final String address, final String label) {
+        this.hash = hash;
+        this.updateTime = updateTime;
+        this.value = value;
+        this.direction = direction;
+        this.confidenceType = confidenceType;
+        this.pending = pending;
+        this.address = address;
+        this.label = label;
+    }
+
+    public static TransactionIndexEntry fromTransaction(final Transaction tx, final Wallet wallet) {
+        final TransactionAnalysis analysis = TransactionAnalysis.of(tx, wallet);
+        final int direction;
+        if (tx.getPurpose() == Purpose.KEY_ROTATION)
+            direction = DIRECTION_INTERNAL;
+        else if (analysis.sent)
+            direction = DIRECTION_SENT;
+        else
+            direction = DIRECTION_RECEIVED;
+        final Date updateTime = tx.getUpdateTime();
+        final ConfidenceType confidenceType = tx.getConfidence().getConfidenceType();
+        final Address address = analysis.address;
+        return new TransactionIndexEntry(tx.getHashAsString(), updateTime != null ? updateTime.getTime() : 0,
+                analysis.value.value, direction, confidenceType.getValue(),
+                confidenceType == ConfidenceType.PENDING, address != null ? address.toBase58() : null, null);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public Sha256Hash getTransactionHash() {
+        return Sha256Hash.wrap(hash);
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public int getConfidenceType() {
+        return confidenceType;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    @Nullable
+    public String getAddress() {
+        return address;
+    }
+
+    @Nullable
+    public String getLabel() {
+        return label;
+    }
+
+    /** True if the cheaply obtainable parts of this entry still match the transaction. */
+    public boolean isUpToDate(final Transaction tx) {
+        final Date updateTime = tx.getUpdateTime();
+        return this.updateTime == (updateTime != null ? updateTime.getTime() : 0)
+                && this.confidenceType == tx.getConfidence().getConfidenceType().getValue();
+    }
+}
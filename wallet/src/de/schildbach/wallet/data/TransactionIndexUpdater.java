@@ -0,0 +1,195 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Keeps the {@link TransactionIndexEntry transaction index} in sync with a wallet. Changes are coalesced and written
+ * in batches on a background thread. On start and after reorganizations, the whole index is reconciled with the
+ * wallet.
+ *
+ * @author Andreas Schildbach
+ */
+public class TransactionIndexUpdater implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+        WalletReorganizeEventListener, TransactionConfidenceEventListener {
+    private final Wallet wallet;
+    private final TransactionIndexDao dao;
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(new ContextPropagatingThreadFactory("transaction index"));
+
+    private final Set<Sha256Hash> changedTransactions = new HashSet<>();
+    private boolean reconcilePending = false;
+
+    private static final long COALESCE_MS = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionIndexUpdater.class);
+
+    public TransactionIndexUpdater(final Wallet wallet, final TransactionIndexDao dao) {
+        this.wallet = wallet;
+        this.dao = dao;
+    }
+
+    /**
+     * @param reset
+     *            true if the index belongs to a different wallet and needs to be wiped first
+     */
+    public void start(final boolean reset) {
+        if (reset) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    dao.deleteAll();
+                }
+            });
+        }
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, this);
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, this);
+        wallet.addReorganizeEventListener(Threading.SAME_THREAD, this);
+        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, this);
+        scheduleReconcile(0);
+    }
+
+    public void stop() {
+        wallet.removeTransactionConfidenceEventListener(this);
+        wallet.removeReorganizeEventListener(this);
+        wallet.removeCoinsSentEventListener(this);
+        wallet.removeCoinsReceivedEventListener(this);
+        executor.shutdown();
+    }
+
+    @Override
+    public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+            final Coin newBalance) {
+        scheduleUpdate(tx.getHash());
+    }
+
+    @Override
+    public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+            final Coin newBalance) {
+        scheduleUpdate(tx.getHash());
+    }
+
+    @Override
+    public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+        // deeper confirmations don't change anything that is indexed, and there are plenty of them on each block
+        final TransactionConfidence confidence = tx.getConfidence();
+        if (confidence.getConfidenceType() == ConfidenceType.BUILDING && confidence.getDepthInBlocks() > 1)
+            return;
+        scheduleUpdate(tx.getHash());
+    }
+
+    @Override
+    public void onReorganize(final Wallet wallet) {
+        scheduleReconcile(COALESCE_MS);
+    }
+
+    private void scheduleUpdate(final Sha256Hash hash) {
+        final boolean firstInBatch;
+        synchronized (changedTransactions) {
+            firstInBatch = changedTransactions.isEmpty();
+            changedTransactions.add(hash);
+        }
+        if (firstInBatch)
+            schedule(updateRunnable, COALESCE_MS);
+    }
+
+    private void scheduleReconcile(final long delayMs) {
+        synchronized (changedTransactions) {
+            if (reconcilePending)
+                return;
+            reconcilePending = true;
+        }
+        schedule(reconcileRunnable, delayMs);
+    }
+
+    private void schedule(final Runnable runnable, final long delayMs) {
+        if (!executor.isShutdown())
+            executor.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Set<Sha256Hash> batch;
+            synchronized (changedTransactions) {
+                batch = new HashSet<>(changedTransactions);
+                changedTransactions.clear();
+            }
+            final List<TransactionIndexEntry> entries = new ArrayList<>(batch.size());
+            final List<String> removedHashes = new ArrayList<>();
+            for (final Sha256Hash hash : batch) {
+                final Transaction tx = wallet.getTransaction(hash);
+                if (tx != null)
+                    entries.add(TransactionIndexEntry.fromTransaction(tx, wallet));
+                else
+                    removedHashes.add(hash.toString());
+            }
+            dao.update(entries, removedHashes);
+        }
+    };
+
+    private final Runnable reconcileRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (changedTransactions) {
+                reconcilePending = false;
+            }
+            final Stopwatch watch = Stopwatch.createStarted();
+            final Map<String, TransactionIndexEntry> indexed = new HashMap<>();
+            for (final TransactionIndexEntry entry : dao.getAllUnordered())
+                indexed.put(entry.getHash(), entry);
+            final List<TransactionIndexEntry> entries = new ArrayList<>();
+            for (final Transaction tx : wallet.getTransactions(true)) {
+                final TransactionIndexEntry entry = indexed.remove(tx.getHashAsString());
+                if (entry == null || !entry.isUpToDate(tx))
+                    entries.add(TransactionIndexEntry.fromTransaction(tx, wallet));
+            }
+            // whatever is left is no longer part of the wallet
+            dao.update(entries, indexed.keySet());
+            watch.stop();
+            log.info("transaction index reconciled: {} updated, {} removed, took {}", entries.size(),
+                    indexed.size(), watch);
+        }
+    };
+}
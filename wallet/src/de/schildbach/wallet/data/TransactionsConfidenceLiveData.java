@@ -0,0 +1,94 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+
+import de.schildbach.wallet.WalletApplication;
+
+import android.os.Handler;
+
+/**
+ * Emits the hashes of all transactions whose confidence changed, coalesced per throttle window. Each value is a
+ * batch of its own; observers must not rely on seeing earlier batches again.
+ *
+ * @author Andreas Schildbach
+ */
+public class TransactionsConfidenceLiveData extends AbstractWalletLiveData<Set<Sha256Hash>>
+        implements TransactionConfidenceEventListener {
+    private final Handler handler = new Handler();
+    private final Set<Sha256Hash> changedTransactions = new HashSet<>();
+
+    private static final long THROTTLE_MS = 1000;
+
+    public TransactionsConfidenceLiveData(final WalletApplication application) {
+        super(application, THROTTLE_MS);
+    }
+
+    @Override
+    protected void onWalletActive(final Wallet wallet) {
+        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, this);
+    }
+
+    @Override
+    protected void onWalletInactive(final Wallet wallet) {
+        wallet.removeTransactionConfidenceEventListener(this);
+        synchronized (changedTransactions) {
+            changedTransactions.clear();
+        }
+    }
+
+    @Override
+    public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+        final boolean firstInBatch;
+        synchronized (changedTransactions) {
+            firstInBatch = changedTransactions.isEmpty();
+            changedTransactions.add(tx.getHash());
+        }
+        // later changes will be picked up by the already scheduled load
+        if (firstInBatch)
+            handler.post(triggerLoadRunnable);
+    }
+
+    private final Runnable triggerLoadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            triggerLoad();
+        }
+    };
+
+    @Override
+    protected void load() {
+        final Set<Sha256Hash> batch;
+        synchronized (changedTransactions) {
+            if (changedTransactions.isEmpty())
+                return;
+            batch = new HashSet<>(changedTransactions);
+            changedTransactions.clear();
+        }
+        // we're on the main thread, so unlike postValue() this will never drop a batch
+        setValue(batch);
+    }
+}
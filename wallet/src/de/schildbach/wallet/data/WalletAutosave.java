@@ -0,0 +1,201 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletFiles;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.schildbach.wallet.Configuration;
+import de.schildbach.wallet.Constants;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.text.format.DateUtils;
+
+/**
+ * Adaptive autosave for a wallet. Every change is written within {@link Constants.Files#WALLET_AUTOSAVE_MAX_DELAY_MS},
+ * by means of bitcoinj's {@link WalletFiles}. Changes the user cares about, like sent or received coins, are
+ * written much sooner, after {@link Constants.Files#WALLET_AUTOSAVE_DELAY_MS}, unless the blockchain is being
+ * replayed. During a replay that would mean rewriting the whole wallet every few seconds, for hours.
+ *
+ * Each save goes to a temporary file which is synced and then renamed over the wallet file. On top of that, the
+ * directory is synced so the rename itself survives a crash.
+ *
+ * @author Andreas Schildbach
+ */
+public class WalletAutosave implements WalletFiles.Listener, WalletCoinsReceivedEventListener,
+        WalletCoinsSentEventListener, WalletReorganizeEventListener {
+    private final Wallet wallet;
+    private final Configuration config;
+    private final WalletFiles walletFiles;
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(new ContextPropagatingThreadFactory("wallet autosave"));
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
+    private final Deque<Save> recentSaves = new ArrayDeque<>();
+
+    private static final Logger log = LoggerFactory.getLogger(WalletAutosave.class);
+
+    private static final class Save {
+        public final long time;
+        public final long bytes;
+
+        public Save(final long time, final long bytes) {
+            this.time = time;
+            this.bytes = bytes;
+        }
+    }
+
+    public WalletAutosave(final Wallet wallet, final File walletFile, final Configuration config) {
+        this.wallet = wallet;
+        this.config = config;
+        this.walletFiles = wallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_MAX_DELAY_MS,
+                TimeUnit.MILLISECONDS, this);
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, this);
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, this);
+        wallet.addReorganizeEventListener(Threading.SAME_THREAD, this);
+    }
+
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    public void saveNow() throws IOException {
+        savePending.set(false);
+        walletFiles.saveNow();
+    }
+
+    /**
+     * Stops autosaving, waiting for a save that is in progress.
+     */
+    public void stop() {
+        wallet.removeReorganizeEventListener(this);
+        wallet.removeCoinsSentEventListener(this);
+        wallet.removeCoinsReceivedEventListener(this);
+        executor.shutdownNow();
+        wallet.shutdownAutosaveAndWait();
+    }
+
+    /**
+     * @return number of bytes written to the wallet file within the last hour
+     */
+    public long getBytesWrittenLastHour() {
+        synchronized (recentSaves) {
+            pruneRecentSaves(SystemClock.elapsedRealtime());
+            long bytes = 0;
+            for (final Save save : recentSaves)
+                bytes += save.bytes;
+            return bytes;
+        }
+    }
+
+    @Override
+    public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+            final Coin newBalance) {
+        maybeSaveSoon();
+    }
+
+    @Override
+    public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+            final Coin newBalance) {
+        maybeSaveSoon();
+    }
+
+    @Override
+    public void onReorganize(final Wallet wallet) {
+        maybeSaveSoon();
+    }
+
+    private void maybeSaveSoon() {
+        // while replaying, WalletFiles will pick up the change in time
+        if (wallet.getLastBlockSeenHeight() < config.getBestChainHeightEver())
+            return;
+        if (executor.isShutdown() || savePending.getAndSet(true))
+            return;
+        executor.schedule(saver, Constants.Files.WALLET_AUTOSAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable saver = new Runnable() {
+        @Override
+        public void run() {
+            if (!savePending.getAndSet(false))
+                return; // somebody else saved in the meantime
+            try {
+                walletFiles.saveNow();
+            } catch (final IOException x) {
+                log.warn("problem autosaving wallet", x);
+            }
+        }
+    };
+
+    @Override
+    public void onBeforeAutoSave(final File tempFile) {
+    }
+
+    @Override
+    public void onAfterAutoSave(final File newlySavedFile) {
+        syncDirectory(newlySavedFile.getAbsoluteFile().getParentFile());
+        final long now = SystemClock.elapsedRealtime();
+        synchronized (recentSaves) {
+            recentSaves.addLast(new Save(now, newlySavedFile.length()));
+            pruneRecentSaves(now);
+        }
+        log.info("wallet autosaved, {} kB written within the last hour", getBytesWrittenLastHour() / 1024);
+    }
+
+    private void pruneRecentSaves(final long now) {
+        while (!recentSaves.isEmpty() && now - recentSaves.peekFirst().time > DateUtils.HOUR_IN_MILLIS)
+            recentSaves.removeFirst();
+    }
+
+    private static void syncDirectory(final File dir) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+            return;
+        try {
+            final FileDescriptor fd = Os.open(dir.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (final ErrnoException x) {
+            log.info("could not sync directory: '" + dir + "'", x);
+        }
+    }
+}
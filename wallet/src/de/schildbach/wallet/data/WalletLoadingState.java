@@ -0,0 +1,123 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable snapshot of the wallet loading progress: the phase currently running and how long each of the completed
+ * phases took. Where the runtime supports it, also how many bytes each phase allocated.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WalletLoadingState {
+    public enum Phase {
+        PARSE, CONSISTENCY_CHECK, CLEANUP, AUTOSAVE, LOADED
+    }
+
+    public final Phase phase;
+    private final long phaseStartedAt;
+    private final long phaseStartedAllocated;
+    private final Map<Phase, Long> durations;
+    private final Map<Phase, Long> allocations;
+
+    private WalletLoadingState(final Phase phase, final Map<Phase, Long> durations,
+            final Map<Phase, Long> allocations) {
+        this.phase = phase;
+        this.phaseStartedAt = SystemClock.elapsedRealtime();
+        this.phaseStartedAllocated = allocatedBytes();
+        this.durations = Collections.unmodifiableMap(durations);
+        this.allocations = Collections.unmodifiableMap(allocations);
+    }
+
+    public static WalletLoadingState start(final Phase phase) {
+        return new WalletLoadingState(phase, new EnumMap<Phase, Long>(Phase.class),
+                new EnumMap<Phase, Long>(Phase.class));
+    }
+
+    /** Finishes the current phase, recording its duration and allocations, and enters the given phase. */
+    public WalletLoadingState next(final Phase phase) {
+        final Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+        durations.putAll(this.durations);
+        durations.put(this.phase, SystemClock.elapsedRealtime() - phaseStartedAt);
+        final Map<Phase, Long> allocations = new EnumMap<>(Phase.class);
+        allocations.putAll(this.allocations);
+        final long allocated = allocatedBytes();
+        if (allocated >= 0 && phaseStartedAllocated >= 0)
+            allocations.put(this.phase, allocated - phaseStartedAllocated);
+        return new WalletLoadingState(phase, durations, allocations);
+    }
+
+    public boolean isLoaded() {
+        return phase == Phase.LOADED;
+    }
+
+    /** @return duration in milliseconds, or {@code null} if the phase didn't complete (or was skipped) */
+    @Nullable
+    public Long getDuration(final Phase phase) {
+        return durations.get(phase);
+    }
+
+    /** @return allocated bytes, or {@code null} if unknown */
+    @Nullable
+    public Long getAllocations(final Phase phase) {
+        return allocations.get(phase);
+    }
+
+    public long getTotalDuration() {
+        long total = 0;
+        for (final long duration : durations.values())
+            total += duration;
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(phase.name());
+        for (final Map.Entry<Phase, Long> entry : durations.entrySet()) {
+            builder.append(", ").append(entry.getKey().name().toLowerCase(Locale.US)).append(": ")
+                    .append(entry.getValue()).append(" ms");
+            final Long allocated = allocations.get(entry.getKey());
+            if (allocated != null)
+                builder.append(" / ").append(allocated / 1024).append(" kB");
+        }
+        return builder.toString();
+    }
+
+    /** Bytes allocated by the whole runtime so far, or -1 if not supported. */
+    private static long allocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
+            return -1;
+        final String allocated = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        if (allocated == null)
+            return -1;
+        try {
+            return Long.parseLong(allocated);
+        } catch (final NumberFormatException x) {
+            return -1;
+        }
+    }
+}
@@ -21,13 +21,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -52,10 +55,7 @@ import org.bitcoinj.core.listeners.PeerDisconnectedEventListener;
 import org.bitcoinj.net.discovery.MultiplexingDiscovery;
 import org.bitcoinj.net.discovery.PeerDiscovery;
 import org.bitcoinj.net.discovery.PeerDiscoveryException;
-import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
-import org.bitcoinj.store.SPVBlockStore;
-import org.bitcoinj.utils.MonetaryFormat;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
 import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
@@ -70,8 +70,7 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.WalletBalanceWidgetProvider;
-import de.schildbach.wallet.data.AddressBookDao;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookCache;
 import de.schildbach.wallet.data.ExchangeRate;
 import de.schildbach.wallet.data.SelectedExchangeRateLiveData;
 import de.schildbach.wallet.data.TimeLiveData;
@@ -79,10 +78,10 @@ import de.schildbach.wallet.data.WalletBalanceLiveData;
 import de.schildbach.wallet.data.WalletLiveData;
 import de.schildbach.wallet.service.BlockchainState.Impediment;
 import de.schildbach.wallet.ui.WalletActivity;
+import de.schildbach.wallet.util.BinaryCheckpoints;
 import de.schildbach.wallet.util.CrashReporter;
-import de.schildbach.wallet.util.WalletUtils;
+import de.schildbach.wallet.util.TransactionAnalysis;
 
-import android.app.AlarmManager;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
@@ -94,7 +93,6 @@ import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
@@ -114,14 +112,21 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 public class BlockchainService extends LifecycleService {
     private WalletApplication application;
     private Configuration config;
-    private AddressBookDao addressBookDao;
     private WalletLiveData wallet;
 
-    private BlockStore blockStore;
+    private RingBlockStore blockStore;
     private File blockChainFile;
     private BlockChain blockChain;
     @Nullable
     private PeerGroup peerGroup;
+    private BloomFilterManager bloomFilterManager;
+    private PeerScoreboard peerScoreboard;
+
+    private final AtomicLong catchUpStartedAt = new AtomicLong(0);
+    private final AtomicLong catchUpFirstBlockAt = new AtomicLong(0);
+    private volatile int catchUpStartHeight;
+    private final AtomicBoolean catchUpBehind = new AtomicBoolean(false);
+    private volatile float downloadRate = 0;
 
     private final Handler handler = new Handler();
     private final Handler delayHandler = new Handler();
@@ -130,9 +135,7 @@ public class BlockchainService extends LifecycleService {
     private PeerConnectivityListener peerConnectivityListener;
     private NotificationManager nm;
     private ImpedimentsLiveData impediments;
-    private int notificationCount = 0;
-    private Coin notificationAccumulatedAmount = Coin.ZERO;
-    private final List<Address> notificationAddresses = new LinkedList<Address>();
+    private CoinsReceivedNotifier coinsReceivedNotifier;
     private AtomicInteger transactionsReceived = new AtomicInteger();
     private long serviceCreatedAt;
     private boolean resetBlockchainOnShutdown = false;
@@ -142,6 +145,9 @@ public class BlockchainService extends LifecycleService {
     private static final int IDLE_TRANSACTION_TIMEOUT_MIN = 9;
     private static final int MAX_HISTORY_SIZE = Math.max(IDLE_TRANSACTION_TIMEOUT_MIN, IDLE_BLOCK_TIMEOUT_MIN);
     private static final long BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS = DateUtils.SECOND_IN_MILLIS;
+    private static final long DOWNLOAD_RATE_INTERVAL_MS = 10 * DateUtils.SECOND_IN_MILLIS;
+    /** Peers handed to PeerGroup per connection slot, best scoring first. */
+    private static final int MAX_CANDIDATE_PEERS_FACTOR = 4;
 
     public static final String ACTION_PEER_STATE = BlockchainService.class.getPackage().getName() + ".peer_state";
     public static final String ACTION_PEER_STATE_NUM_PEERS = "num_peers";
@@ -171,33 +177,6 @@ public class BlockchainService extends LifecycleService {
         context.stopService(new Intent(context, BlockchainService.class));
     }
 
-    public static void scheduleStart(final WalletApplication application) {
-        final Configuration config = application.getConfiguration();
-        final long lastUsedAgo = config.getLastUsedAgo();
-
-        // apply some backoff
-        final long alarmInterval;
-        if (lastUsedAgo < Constants.LAST_USAGE_THRESHOLD_JUST_MS)
-            alarmInterval = AlarmManager.INTERVAL_FIFTEEN_MINUTES;
-        else if (lastUsedAgo < Constants.LAST_USAGE_THRESHOLD_RECENTLY_MS)
-            alarmInterval = AlarmManager.INTERVAL_HALF_DAY;
-        else
-            alarmInterval = AlarmManager.INTERVAL_DAY;
-
-        log.info("last used {} minutes ago, rescheduling blockchain sync in roughly {} minutes",
-                lastUsedAgo / DateUtils.MINUTE_IN_MILLIS, alarmInterval / DateUtils.MINUTE_IN_MILLIS);
-
-        final AlarmManager alarmManager = (AlarmManager) application.getSystemService(Context.ALARM_SERVICE);
-        final PendingIntent alarmIntent = PendingIntent.getService(application, 0,
-                new Intent(application, BlockchainService.class), 0);
-        alarmManager.cancel(alarmIntent);
-
-        // workaround for no inexact set() before KitKat
-        final long now = System.currentTimeMillis();
-        alarmManager.setInexactRepeating(AlarmManager.RTC_WAKEUP, now + alarmInterval, AlarmManager.INTERVAL_DAY,
-                alarmIntent);
-    }
-
     public static void resetBlockchain(final Context context) {
         // implicitly stops blockchain service
         context.startService(
@@ -247,67 +226,6 @@ public class BlockchainService extends LifecycleService {
         }
     }
 
-    private void notifyCoinsReceived(@Nullable final Address address, final Coin amount,
-            final Sha256Hash transactionHash) {
-        notificationCount++;
-        notificationAccumulatedAmount = notificationAccumulatedAmount.add(amount);
-        if (address != null && !notificationAddresses.contains(address))
-            notificationAddresses.add(address);
-
-        final MonetaryFormat btcFormat = config.getFormat();
-        final String packageFlavor = application.applicationPackageFlavor();
-        final String msgSuffix = packageFlavor != null ? " [" + packageFlavor + "]" : "";
-
-        // summary notification
-        final NotificationCompat.Builder summaryNotification = new NotificationCompat.Builder(this,
-                Constants.NOTIFICATION_CHANNEL_ID_RECEIVED);
-        summaryNotification.setGroup(Constants.NOTIFICATION_GROUP_KEY_RECEIVED);
-        summaryNotification.setGroupSummary(true);
-        summaryNotification.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN);
-        summaryNotification.setWhen(System.currentTimeMillis());
-        summaryNotification.setSmallIcon(R.drawable.stat_notify_received_24dp);
-        summaryNotification.setContentTitle(
-                getString(R.string.notification_coins_received_msg, btcFormat.format(notificationAccumulatedAmount))
-                        + msgSuffix);
-        if (!notificationAddresses.isEmpty()) {
-            final StringBuilder text = new StringBuilder();
-            for (final Address notificationAddress : notificationAddresses) {
-                if (text.length() > 0)
-                    text.append(", ");
-                final String addressStr = notificationAddress.toBase58();
-                final String label = addressBookDao.resolveLabel(addressStr);
-                text.append(label != null ? label : addressStr);
-            }
-            summaryNotification.setContentText(text);
-        }
-        summaryNotification
-                .setContentIntent(PendingIntent.getActivity(this, 0, new Intent(this, WalletActivity.class), 0));
-        nm.notify(Constants.NOTIFICATION_ID_COINS_RECEIVED, summaryNotification.build());
-
-        // child notification
-        final NotificationCompat.Builder childNotification = new NotificationCompat.Builder(this,
-                Constants.NOTIFICATION_CHANNEL_ID_RECEIVED);
-        childNotification.setGroup(Constants.NOTIFICATION_GROUP_KEY_RECEIVED);
-        childNotification.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN);
-        childNotification.setWhen(System.currentTimeMillis());
-        childNotification.setSmallIcon(R.drawable.stat_notify_received_24dp);
-        final String msg = getString(R.string.notification_coins_received_msg, btcFormat.format(amount)) + msgSuffix;
-        childNotification.setTicker(msg);
-        childNotification.setContentTitle(msg);
-        if (address != null) {
-            final String addressStr = address.toBase58();
-            final String addressLabel = addressBookDao.resolveLabel(addressStr);
-            if (addressLabel != null)
-                childNotification.setContentText(addressLabel);
-            else
-                childNotification.setContentText(addressStr);
-        }
-        childNotification
-                .setContentIntent(PendingIntent.getActivity(this, 0, new Intent(this, WalletActivity.class), 0));
-        childNotification.setSound(Uri.parse("android.resource://" + getPackageName() + "/" + R.raw.coins_received));
-        nm.notify(transactionHash.toString(), Constants.NOTIFICATION_ID_COINS_RECEIVED, childNotification.build());
-    }
-
     private final class PeerConnectivityListener
             implements PeerConnectedEventListener, PeerDisconnectedEventListener, OnSharedPreferenceChangeListener {
         private int peerCount;
@@ -376,19 +294,83 @@ public class BlockchainService extends LifecycleService {
 
     private final PeerDataEventListener blockchainDownloadListener = new AbstractPeerDataEventListener() {
         private final AtomicLong lastMessageTime = new AtomicLong(0);
+        private final AtomicInteger headersOnly = new AtomicInteger(0);
+        private final Map<Peer, AtomicInteger> blocksPerPeer = new ConcurrentHashMap<>();
+        private final AtomicLong lastRateTime = new AtomicLong(System.currentTimeMillis());
 
         @Override
         public void onBlocksDownloaded(final Peer peer, final Block block, final FilteredBlock filteredBlock,
                 final int blocksLeft) {
+            if (filteredBlock == null && block.getTransactions() == null) {
+                headersOnly.incrementAndGet();
+            } else {
+                final int headers = headersOnly.getAndSet(0);
+                if (headers > 0)
+                    log.info("caught up on {} block headers, continuing with filtered blocks from {}", headers,
+                            peer);
+            }
+
+            final AtomicInteger blocks = blocksPerPeer.get(peer);
+            if (blocks != null)
+                blocks.incrementAndGet();
+            else
+                blocksPerPeer.put(peer, new AtomicInteger(1));
+
             delayHandler.removeCallbacksAndMessages(null);
 
             final long now = System.currentTimeMillis();
+            catchUpFirstBlockAt.compareAndSet(0, now);
+            if (blocksLeft > 0)
+                catchUpBehind.set(true);
+            final long catchUpStartedAt = BlockchainService.this.catchUpStartedAt.get();
+            if (blocksLeft == 0 && catchUpStartedAt > 0
+                    && BlockchainService.this.catchUpStartedAt.compareAndSet(catchUpStartedAt, 0)) {
+                // a chain that was up to date only waited for the next block to be mined, which says nothing
+                // about catch-up cost
+                if (catchUpBehind.get()) {
+                    final long overheadMs = catchUpFirstBlockAt.get() - catchUpStartedAt;
+                    final long downloadMs = now - catchUpFirstBlockAt.get();
+                    final int numBlocks = blockChain.getBestChainHeight() - catchUpStartHeight;
+                    log.info("caught up on {} blocks within {} ms, first block after {} ms", numBlocks, downloadMs,
+                            overheadMs);
+                    config.recordCatchUp(overheadMs, numBlocks, downloadMs);
+                }
+            }
+            final long lastRateTime = this.lastRateTime.get();
+            if (blocksLeft == 0)
+                downloadRate = 0;
+            else if (now - lastRateTime > DOWNLOAD_RATE_INTERVAL_MS
+                    && this.lastRateTime.compareAndSet(lastRateTime, now))
+                updateDownloadRates(now - lastRateTime);
             if (now - lastMessageTime.get() > BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS)
                 delayHandler.post(runnable);
             else
                 delayHandler.postDelayed(runnable, BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS);
         }
 
+        private void updateDownloadRates(final long periodMs) {
+            final StringBuilder rates = new StringBuilder();
+            int totalBlocks = 0;
+            for (final Iterator<Map.Entry<Peer, AtomicInteger>> i = blocksPerPeer.entrySet().iterator(); i
+                    .hasNext();) {
+                final Map.Entry<Peer, AtomicInteger> entry = i.next();
+                final int blocks = entry.getValue().getAndSet(0);
+                if (blocks == 0) {
+                    i.remove();
+                    continue;
+                }
+                totalBlocks += blocks;
+                if (rates.length() > 0)
+                    rates.append(", ");
+                rates.append(entry.getKey().getAddress()).append(": ")
+                        .append(String.format(Locale.US, "%.1f", blocks * 1000.0 / periodMs)).append(" blocks/s");
+            }
+            if (rates.length() > 0)
+                log.info("download rates: {}", rates);
+            // only one peer is downloading at a time, so this is the rate of the current download peer
+            downloadRate = totalBlocks * 1000f / periodMs;
+        }
+
         private final Runnable runnable = new Runnable() {
             @Override
             public void run() {
@@ -505,7 +487,8 @@ public class BlockchainService extends LifecycleService {
         wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getClass().getName());
         application = (WalletApplication) getApplication();
         config = application.getConfiguration();
-        addressBookDao = AppDatabase.getDatabase(application).addressBookDao();
+        coinsReceivedNotifier = new CoinsReceivedNotifier(this, AddressBookCache.get(application), config,
+                application.applicationPackageFlavor());
         blockChainFile = new File(getDir("blockstore", Context.MODE_PRIVATE), Constants.Files.BLOCKCHAIN_FILENAME);
 
         peerConnectivityListener = new PeerConnectivityListener();
@@ -515,8 +498,14 @@ public class BlockchainService extends LifecycleService {
         final WalletBalanceLiveData walletBalance = new WalletBalanceLiveData(application);
         final SelectedExchangeRateLiveData exchangeRate = new SelectedExchangeRateLiveData(application);
         walletBalance.observe(this, new Observer<Coin>() {
+            private Coin lastWalletBalance;
+
             @Override
             public void onChanged(final Coin walletBalance) {
+                // most wallet changes during sync are confidence changes that don't move the balance
+                if (walletBalance.equals(lastWalletBalance))
+                    return;
+                lastWalletBalance = walletBalance;
                 WalletBalanceWidgetProvider.updateWidgets(BlockchainService.this, walletBalance,
                         exchangeRate.getValue());
             }
@@ -543,23 +532,32 @@ public class BlockchainService extends LifecycleService {
                 }
 
                 try {
-                    blockStore = new SPVBlockStore(Constants.NETWORK_PARAMETERS, blockChainFile);
+                    blockStore = new RingBlockStore(Constants.NETWORK_PARAMETERS, blockChainFile,
+                            application.blockStoreCapacity());
                     blockStore.getChainHead(); // detect corruptions as early as possible
 
                     final long earliestKeyCreationTime = wallet.getEarliestKeyCreationTime();
 
                     if (!blockChainFileExists && earliestKeyCreationTime > 0) {
+                        final Stopwatch watch = Stopwatch.createStarted();
                         try {
-                            final Stopwatch watch = Stopwatch.createStarted();
-                            final InputStream checkpointsInputStream = getAssets()
-                                    .open(Constants.Files.CHECKPOINTS_FILENAME);
-                            CheckpointManager.checkpoint(Constants.NETWORK_PARAMETERS, checkpointsInputStream,
-                                    blockStore, earliestKeyCreationTime);
+                            BinaryCheckpoints.map(getAssets(), Constants.Files.CHECKPOINTS_BINARY_FILENAME)
+                                    .checkpoint(Constants.NETWORK_PARAMETERS, blockStore, earliestKeyCreationTime);
                             watch.stop();
-                            log.info("checkpoints loaded from '{}', took {}", Constants.Files.CHECKPOINTS_FILENAME,
-                                    watch);
+                            log.info("checkpoints loaded from '{}', took {}",
+                                    Constants.Files.CHECKPOINTS_BINARY_FILENAME, watch);
                         } catch (final IOException x) {
-                            log.error("problem reading checkpoints, continuing without", x);
+                            log.warn("problem reading binary checkpoints, falling back to text", x);
+                            try (final InputStream checkpointsInputStream = getAssets()
+                                    .open(Constants.Files.CHECKPOINTS_FILENAME)) {
+                                CheckpointManager.checkpoint(Constants.NETWORK_PARAMETERS, checkpointsInputStream,
+                                        blockStore, earliestKeyCreationTime);
+                                watch.stop();
+                                log.info("checkpoints loaded from '{}', took {}", Constants.Files.CHECKPOINTS_FILENAME,
+                                        watch);
+                            } catch (final IOException x2) {
+                                log.error("problem reading checkpoints, continuing without", x2);
+                            }
                         }
                     }
                 } catch (final BlockStoreException x) {
@@ -588,15 +586,16 @@ public class BlockchainService extends LifecycleService {
             public void onChanged(final Transaction tx) {
                 final Wallet wallet = BlockchainService.this.wallet.getValue();
                 transactionsReceived.incrementAndGet();
-                final Coin amount = tx.getValue(wallet);
+                final TransactionAnalysis analysis = TransactionAnalysis.of(tx, wallet);
+                final Coin amount = analysis.value;
                 if (amount.isPositive()) {
-                    final Address address = WalletUtils.getWalletAddressOfReceived(tx, wallet);
+                    final Address address = analysis.address;
                     final ConfidenceType confidenceType = tx.getConfidence().getConfidenceType();
                     final Sha256Hash hash = tx.getHash();
                     final boolean replaying = blockChain.getBestChainHeight() < config.getBestChainHeightEver();
                     final boolean isReplayedTx = confidenceType == ConfidenceType.BUILDING && replaying;
                     if (!isReplayedTx)
-                        notifyCoinsReceived(address, amount, hash);
+                        coinsReceivedNotifier.notifyCoinsReceived(address, amount, hash);
                 }
             }
         });
@@ -697,10 +696,50 @@ public class BlockchainService extends LifecycleService {
                     CrashReporter.saveBackgroundTrace(new RuntimeException(message), application.packageInfo());
                 }
 
-                peerGroup = new PeerGroup(Constants.NETWORK_PARAMETERS, blockChain);
+                final PeerScoreboard peerScoreboard = new PeerScoreboard(
+                        new File(getFilesDir(), Constants.Files.PEER_SCOREBOARD_FILENAME), blockChain);
+                peerGroup = new PeerGroup(Constants.NETWORK_PARAMETERS, blockChain) {
+                    @Override
+                    protected Peer selectDownloadPeer(final List<Peer> peers) {
+                        // same candidates as bitcoinj: peers at the most common chain height, speaking a recent
+                        // enough protocol version
+                        final int mostCommonChainHeight = getMostCommonChainHeight(peers);
+                        int highestVersion = 0;
+                        for (final Peer peer : peers)
+                            if (peer.getBestHeight() == mostCommonChainHeight)
+                                highestVersion = Math.max(peer.getPeerVersionMessage().clientVersion, highestVersion);
+                        final int preferredVersion = Math.min(highestVersion, FilteredBlock.MIN_PROTOCOL_VERSION);
+
+                        // of those, pick the one that did best in the past
+                        Peer bestPeer = null;
+                        double bestScore = 0;
+                        for (final Peer peer : peers) {
+                            if (peer.getBestHeight() != mostCommonChainHeight
+                                    || peer.getPeerVersionMessage().clientVersion < preferredVersion)
+                                continue;
+                            final double score = peerScoreboard.score(peer.getAddress().getSocketAddress());
+                            if (bestPeer == null || score > bestScore) {
+                                bestPeer = peer;
+                                bestScore = score;
+                            }
+                        }
+                        if (bestPeer == null)
+                            return super.selectDownloadPeer(peers);
+                        log.info("selected download peer {} with score {}", bestPeer, (long) bestScore);
+                        return bestPeer;
+                    }
+                };
                 log.info("creating {}", peerGroup);
                 peerGroup.setDownloadTxDependencies(0); // recursive implementation causes StackOverflowError
                 peerGroup.addWallet(wallet);
+                // addWallet() has set the fast catch-up time from the earliest key, headers only are fetched until then
+                final long fastCatchupTimeSecs = peerGroup.getFastCatchupTimeSecs();
+                if (blockChain.getChainHead().getHeader().getTimeSeconds() < fastCatchupTimeSecs)
+                    log.info("catching up on block headers only until {}", new Date(fastCatchupTimeSecs * 1000));
+                bloomFilterManager = new BloomFilterManager(peerGroup, wallet);
+                bloomFilterManager.start();
+                peerScoreboard.start(peerGroup);
+                BlockchainService.this.peerScoreboard = peerScoreboard;
                 peerGroup.setUserAgent(Constants.USER_AGENT, application.packageInfo().versionName);
                 peerGroup.addConnectedEventListener(peerConnectivityListener);
                 peerGroup.addDisconnectedEventListener(peerConnectivityListener);
@@ -716,8 +755,9 @@ public class BlockchainService extends LifecycleService {
                 peerGroup.setPeerDiscoveryTimeoutMillis(Constants.PEER_DISCOVERY_TIMEOUT_MS);
 
                 peerGroup.addPeerDiscovery(new PeerDiscovery() {
-                    private final PeerDiscovery normalPeerDiscovery = MultiplexingDiscovery
-                            .forServices(Constants.NETWORK_PARAMETERS, 0);
+                    private final PeerDiscovery normalPeerDiscovery = new CachedPeerDiscovery(
+                            MultiplexingDiscovery.forServices(Constants.NETWORK_PARAMETERS, 0), peerScoreboard,
+                            maxConnectedPeers);
 
                     @Override
                     public InetSocketAddress[] getPeers(final long services, final long timeoutValue,
@@ -739,8 +779,9 @@ public class BlockchainService extends LifecycleService {
                         }
 
                         if (!connectTrustedPeerOnly)
-                            peers.addAll(
-                                    Arrays.asList(normalPeerDiscovery.getPeers(services, timeoutValue, timeoutUnit)));
+                            peers.addAll(peerScoreboard.rank(
+                                    Arrays.asList(normalPeerDiscovery.getPeers(services, timeoutValue, timeoutUnit)),
+                                    maxConnectedPeers * MAX_CANDIDATE_PEERS_FACTOR));
 
                         // workaround because PeerGroup will shuffle peers
                         if (needsTrimPeersWorkaround)
@@ -759,12 +800,20 @@ public class BlockchainService extends LifecycleService {
                 // start peergroup
                 log.info("starting {} asynchronously", peerGroup);
                 peerGroup.startAsync();
+                catchUpStartHeight = blockChain.getBestChainHeight();
+                catchUpFirstBlockAt.set(0);
+                catchUpBehind.set(false);
+                catchUpStartedAt.set(System.currentTimeMillis());
                 peerGroup.startBlockChainDownload(blockchainDownloadListener);
             }
 
             private void shutdown() {
                 final Wallet wallet = BlockchainService.this.wallet.getValue();
 
+                bloomFilterManager.stop();
+                bloomFilterManager = null;
+                peerScoreboard.stop(peerGroup);
+                peerScoreboard = null;
                 peerGroup.removeDisconnectedEventListener(peerConnectivityListener);
                 peerGroup.removeConnectedEventListener(peerConnectivityListener);
                 peerGroup.removeWallet(wallet);
@@ -789,11 +838,7 @@ public class BlockchainService extends LifecycleService {
             final String action = intent.getAction();
 
             if (BlockchainService.ACTION_CANCEL_COINS_RECEIVED.equals(action)) {
-                notificationCount = 0;
-                notificationAccumulatedAmount = Coin.ZERO;
-                notificationAddresses.clear();
-
-                nm.cancel(Constants.NOTIFICATION_ID_COINS_RECEIVED);
+                coinsReceivedNotifier.cancel();
             } else if (BlockchainService.ACTION_RESET_BLOCKCHAIN.equals(action)) {
                 log.info("will remove blockchain on service shutdown");
 
@@ -823,6 +868,8 @@ public class BlockchainService extends LifecycleService {
         log.debug(".onDestroy()");
 
         if (peerGroup != null) {
+            bloomFilterManager.stop();
+            peerScoreboard.stop(peerGroup);
             peerGroup.removeDisconnectedEventListener(peerConnectivityListener);
             peerGroup.removeConnectedEventListener(peerConnectivityListener);
             peerGroup.removeWallet(wallet.getValue());
@@ -831,6 +878,7 @@ public class BlockchainService extends LifecycleService {
         }
 
         peerConnectivityListener.stop();
+        coinsReceivedNotifier.stop();
 
         delayHandler.removeCallbacksAndMessages(null);
 
@@ -854,7 +902,9 @@ public class BlockchainService extends LifecycleService {
             blockChainFile.delete();
         }
 
-        scheduleStart(application);
+        if (wallet.getValue() != null)
+            config.setPendingOutgoingTransactions(hasPendingOutgoingTransactions(wallet.getValue()));
+        SyncScheduler.schedule(application);
 
         stopForeground(true);
 
@@ -863,6 +913,13 @@ public class BlockchainService extends LifecycleService {
         log.info("service was up for " + ((System.currentTimeMillis() - serviceCreatedAt) / 1000 / 60) + " minutes");
     }
 
+    private static boolean hasPendingOutgoingTransactions(final Wallet wallet) {
+        for (final Transaction tx : wallet.getPendingTransactions())
+            if (tx.getValue(wallet).signum() < 0)
+                return true;
+        return false;
+    }
+
     @Override
     public void onTrimMemory(final int level) {
         log.info("onTrimMemory({}) called", level);
@@ -883,7 +940,7 @@ public class BlockchainService extends LifecycleService {
         final int bestChainHeight = chainHead.getHeight();
         final boolean replaying = chainHead.getHeight() < config.getBestChainHeightEver();
 
-        return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments.getValue());
+        return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments.getValue(), downloadRate);
     }
 
     @Nullable
@@ -899,16 +956,8 @@ public class BlockchainService extends LifecycleService {
         if (blockChain == null)
             return null;
 
-        final List<StoredBlock> blocks = new ArrayList<StoredBlock>(maxBlocks);
         try {
-            StoredBlock block = blockChain.getChainHead();
-            while (block != null) {
-                blocks.add(block);
-                if (blocks.size() >= maxBlocks)
-                    break;
-                block = block.getPrev(blockStore);
-            }
-            return blocks;
+            return blockStore.getRecentBlocks(maxBlocks);
         } catch (final BlockStoreException x) {
             throw new RuntimeException(x);
         }
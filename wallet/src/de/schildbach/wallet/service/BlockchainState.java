@@ -31,6 +31,7 @@ public class BlockchainState {
     private static final String EXTRA_BEST_CHAIN_HEIGHT = "best_chain_height";
     private static final String EXTRA_REPLAYING = "replaying";
     private static final String EXTRA_IMPEDIMENTS = "impediment";
+    private static final String EXTRA_DOWNLOAD_RATE = "download_rate";
 
     public enum Impediment {
         STORAGE, NETWORK
@@ -40,13 +41,16 @@ public class BlockchainState {
     public final int bestChainHeight;
     public final boolean replaying;
     public final EnumSet<Impediment> impediments;
+    /** Blocks per second from the current download peer, or 0 if not downloading. */
+    public final float downloadRate;
 
     public BlockchainState(final Date bestChainDate, final int bestChainHeight, final boolean replaying,
-            final Set<Impediment> impediments) {
+            final Set<Impediment> impediments, final float downloadRate) {
         this.bestChainDate = bestChainDate;
         this.bestChainHeight = bestChainHeight;
         this.replaying = replaying;
         this.impediments = EnumSet.copyOf(impediments);
+        this.downloadRate = downloadRate;
     }
 
     public static BlockchainState fromIntent(final Intent intent) {
@@ -55,8 +59,9 @@ public class BlockchainState {
         final boolean replaying = intent.getBooleanExtra(EXTRA_REPLAYING, false);
         @SuppressWarnings("unchecked")
         final Set<Impediment> impediments = (Set<Impediment>) intent.getSerializableExtra(EXTRA_IMPEDIMENTS);
+        final float downloadRate = intent.getFloatExtra(EXTRA_DOWNLOAD_RATE, 0);
         if (bestChainDate != null && bestChainHeight != -1 && impediments != null)
-            return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments);
+            return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments, downloadRate);
         else
             return null;
     }
@@ -66,5 +71,6 @@ public class BlockchainState {
         intent.putExtra(EXTRA_BEST_CHAIN_HEIGHT, bestChainHeight);
         intent.putExtra(EXTRA_REPLAYING, replaying);
         intent.putExtra(EXTRA_IMPEDIMENTS, impediments);
+        intent.putExtra(EXTRA_DOWNLOAD_RATE, downloadRate);
     }
 }
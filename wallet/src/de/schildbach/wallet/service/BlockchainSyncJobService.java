@@ -0,0 +1,58 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.schildbach.wallet.WalletApplication;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/**
+ * Starts the {@link BlockchainService} when the job scheduled by {@link SyncScheduler} is due. The next sync is
+ * scheduled right away and rescheduled by the service when it stops.
+ *
+ * @author Andreas Schildbach
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class BlockchainSyncJobService extends JobService {
+    private static final Logger log = LoggerFactory.getLogger(BlockchainSyncJobService.class);
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        log.info("sync job due, starting blockchain service");
+        // jobs are one-shot, so make sure there is a next one even if the service never gets to reschedule
+        SyncScheduler.schedule((WalletApplication) getApplication());
+        try {
+            BlockchainService.start(this, false);
+        } catch (final IllegalStateException x) {
+            log.warn("cannot start blockchain service from background, retrying soon", x);
+            SyncScheduler.scheduleRetry(this);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onStopJob(final JobParameters params) {
+        return false;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.listeners.AbstractPeerDataEventListener;
+import org.bitcoinj.core.listeners.PeerDisconnectedEventListener;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.KeyChainEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes the Bloom filter of a {@link PeerGroup} to the number of elements the wallet actually puts into it, and keeps
+ * track of the false positives each peer sends.
+ *
+ * BIP37 caps filters at 36000 bytes. With the default false-positive rate, wallets with thousands of keys hit that
+ * cap, so the rate actually achieved is far worse than requested. PeerGroup then keeps forcing filter refreshes because
+ * the observed rate is off target, and none of them helps. This manager asks for a rate the filter can actually
+ * achieve, and only changes it if it drifts by more than a factor of {@link #RECALCULATE_THRESHOLD}.
+ *
+ * @author Andreas Schildbach
+ */
+public class BloomFilterManager extends AbstractPeerDataEventListener
+        implements KeyChainEventListener, PeerDisconnectedEventListener {
+    private final PeerGroup peerGroup;
+    private final Wallet wallet;
+
+    private final Map<Peer, PeerStats> peerStats = new HashMap<>();
+    private int elementCount = 0;
+    private double falsePositiveRate = PeerGroup.DEFAULT_BLOOM_FILTER_FP_RATE;
+    private int rateChanges = 0;
+
+    private static final int MAX_FILTER_BITS = 36000 * 8;
+    /** Elements PeerGroup adds on top of the wallet, so new keys don't need a filter recalculation right away. */
+    private static final int ELEMENT_SLACK = 100;
+    /** Keeps the filter somewhat below its maximum size. */
+    private static final double HEADROOM = 2.0;
+    private static final double RECALCULATE_THRESHOLD = 2.0;
+
+    private static final Logger log = LoggerFactory.getLogger(BloomFilterManager.class);
+
+    private static final class PeerStats {
+        public long filteredBlocks = 0;
+        public long transactions = 0;
+        public long relevant = 0;
+        public long falsePositives = 0;
+
+        public double falsePositiveRate() {
+            final long irrelevant = transactions - relevant;
+            return irrelevant > 0 ? (double) falsePositives / irrelevant : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d blocks, %d/%d false positives (%.6f)", filteredBlocks, falsePositives,
+                    transactions - relevant, falsePositiveRate());
+        }
+    }
+
+    public BloomFilterManager(final PeerGroup peerGroup, final Wallet wallet) {
+        this.peerGroup = peerGroup;
+        this.wallet = wallet;
+    }
+
+    public void start() {
+        update();
+        peerGroup.addBlocksDownloadedEventListener(Threading.SAME_THREAD, this);
+        peerGroup.addDisconnectedEventListener(Threading.SAME_THREAD, this);
+        // not on the same thread, as PeerGroup must not be locked while holding the wallet lock
+        wallet.addKeyChainEventListener(Threading.USER_THREAD, this);
+    }
+
+    public void stop() {
+        wallet.removeKeyChainEventListener(this);
+        peerGroup.removeDisconnectedEventListener(this);
+        peerGroup.removeBlocksDownloadedEventListener(this);
+        log.info("bloom filter stats: {}", getStats());
+    }
+
+    @Override
+    public void onKeysAdded(final List<ECKey> keys) {
+        update();
+    }
+
+    private void update() {
+        final int elementCount = wallet.getBloomFilterElementCount() + ELEMENT_SLACK;
+        final double rate = Math.max(PeerGroup.DEFAULT_BLOOM_FILTER_FP_RATE,
+                achievableFalsePositiveRate(elementCount) * HEADROOM);
+        final double currentRate;
+        synchronized (this) {
+            this.elementCount = elementCount;
+            currentRate = this.falsePositiveRate;
+            if (rate < currentRate * RECALCULATE_THRESHOLD && rate > currentRate / RECALCULATE_THRESHOLD)
+                return;
+            this.falsePositiveRate = rate;
+            this.rateChanges++;
+        }
+        log.info("adjusting bloom filter false-positive rate for {} elements: {} -> {}", elementCount, currentRate,
+                rate);
+        peerGroup.setBloomFilterFalsePositiveRate(rate);
+    }
+
+    /** False-positive rate of a filter of maximum size, holding the given number of elements. */
+    private static double achievableFalsePositiveRate(final int elementCount) {
+        return Math.exp(-MAX_FILTER_BITS * Math.log(2) * Math.log(2) / elementCount);
+    }
+
+    @Override
+    public void onBlocksDownloaded(final Peer peer, final Block block, final FilteredBlock filteredBlock,
+            final int blocksLeft) {
+        if (filteredBlock == null)
+            return;
+        final List<Sha256Hash> matched = filteredBlock.getTransactionHashes();
+        int relevant = 0;
+        for (final Sha256Hash hash : matched)
+            if (wallet.getTransaction(hash) != null)
+                relevant++;
+        synchronized (this) {
+            PeerStats stats = peerStats.get(peer);
+            if (stats == null) {
+                stats = new PeerStats();
+                peerStats.put(peer, stats);
+            }
+            stats.filteredBlocks++;
+            stats.transactions += filteredBlock.getPartialMerkleTree().getTransactionCount();
+            stats.relevant += relevant;
+            stats.falsePositives += matched.size() - relevant;
+        }
+    }
+
+    @Override
+    public void onPeerDisconnected(final Peer peer, final int peerCount) {
+        final PeerStats stats;
+        synchronized (this) {
+            stats = peerStats.remove(peer);
+        }
+        if (stats != null)
+            log.info("bloom filter stats for {}: {}", peer, stats);
+    }
+
+    /**
+     * @return human readable metrics: filter parameters and observed false positives, overall and per connected peer
+     */
+    public synchronized String getStats() {
+        long falsePositives = 0;
+        long irrelevant = 0;
+        for (final PeerStats stats : peerStats.values()) {
+            falsePositives += stats.falsePositives;
+            irrelevant += stats.transactions - stats.relevant;
+        }
+        final StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                "%d elements, requested false-positive rate %.6f (changed %d times), observed %.6f", elementCount,
+                falsePositiveRate, rateChanges, irrelevant > 0 ? (double) falsePositives / irrelevant : 0));
+        for (final Map.Entry<Peer, PeerStats> entry : peerStats.entrySet())
+            builder.append("; ").append(entry.getKey().getAddress()).append(": ").append(entry.getValue());
+        return builder.toString();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.bitcoinj.net.discovery.PeerDiscovery;
+import org.bitcoinj.net.discovery.PeerDiscoveryException;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.text.format.DateUtils;
+import androidx.annotation.Nullable;
+
+/**
+ * Peer discovery that offers the peers we recently synced with successfully, while looking up the seeds in the
+ * background. If enough of those peers are known, they are returned right away and the seed lookup is left running,
+ * for the next time PeerGroup asks. Otherwise, this waits for the seeds and returns both.
+ *
+ * @author Andreas Schildbach
+ */
+public class CachedPeerDiscovery implements PeerDiscovery {
+    private final PeerDiscovery seedDiscovery;
+    private final PeerScoreboard scoreboard;
+    private final int minCachedPeers;
+    private final ExecutorService executor = Executors
+            .newSingleThreadExecutor(new ContextPropagatingThreadFactory("peer discovery"));
+    @Nullable
+    private Future<InetSocketAddress[]> seedLookup = null;
+
+    private static final long CACHED_PEER_MAX_AGE_MS = 7 * DateUtils.DAY_IN_MILLIS;
+    private static final int MAX_CACHED_PEERS = 32;
+
+    private static final Logger log = LoggerFactory.getLogger(CachedPeerDiscovery.class);
+
+    /**
+     * @param minCachedPeers
+     *            number of cached peers needed for not waiting on the seeds
+     */
+    public CachedPeerDiscovery(final PeerDiscovery seedDiscovery, final PeerScoreboard scoreboard,
+            final int minCachedPeers) {
+        this.seedDiscovery = seedDiscovery;
+        this.scoreboard = scoreboard;
+        this.minCachedPeers = minCachedPeers;
+    }
+
+    @Override
+    public InetSocketAddress[] getPeers(final long services, final long timeoutValue, final TimeUnit timeoutUnit)
+            throws PeerDiscoveryException {
+        final Future<InetSocketAddress[]> seedLookup;
+        synchronized (this) {
+            if (this.seedLookup == null)
+                this.seedLookup = executor.submit(new Callable<InetSocketAddress[]>() {
+                    @Override
+                    public InetSocketAddress[] call() throws PeerDiscoveryException {
+                        return seedDiscovery.getPeers(services, timeoutValue, timeoutUnit);
+                    }
+                });
+            seedLookup = this.seedLookup;
+        }
+
+        final List<InetSocketAddress> cachedPeers = scoreboard.getRecentlySucceeded(CACHED_PEER_MAX_AGE_MS,
+                MAX_CACHED_PEERS);
+        if (cachedPeers.size() >= minCachedPeers && !seedLookup.isDone()) {
+            log.info("trying {} cached peers, seeds still being looked up", cachedPeers.size());
+            return cachedPeers.toArray(new InetSocketAddress[0]);
+        }
+
+        final Set<InetSocketAddress> peers = new LinkedHashSet<>(cachedPeers);
+        try {
+            peers.addAll(Arrays.asList(seedLookup.get(timeoutValue, timeoutUnit)));
+        } catch (final ExecutionException x) {
+            if (cachedPeers.isEmpty())
+                throw new PeerDiscoveryException(x.getCause());
+            log.info("seed lookup failed, trying {} cached peers only", cachedPeers.size(), x.getCause());
+        } catch (final TimeoutException | InterruptedException x) {
+            if (cachedPeers.isEmpty())
+                throw new PeerDiscoveryException(x);
+            log.info("seed lookup did not finish, trying {} cached peers only", cachedPeers.size());
+        } finally {
+            synchronized (this) {
+                if (this.seedLookup == seedLookup && seedLookup.isDone())
+                    this.seedLookup = null;
+            }
+        }
+        return peers.toArray(new InetSocketAddress[0]);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+        seedDiscovery.shutdown();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.utils.MonetaryFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.schildbach.wallet.Configuration;
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.R;
+import de.schildbach.wallet.data.AddressBookCache;
+import de.schildbach.wallet.ui.WalletActivity;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.format.DateUtils;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+
+/**
+ * Notifies about received coins. Payments arriving within a short window are collected and posted as one update,
+ * with the labels of all their addresses resolved at once, on a background thread.
+ *
+ * @author Andreas Schildbach
+ */
+public class CoinsReceivedNotifier {
+    private final Context context;
+    private final NotificationManager nm;
+    private final AddressBookCache addressBook;
+    private final Configuration config;
+    @Nullable
+    private final String packageFlavor;
+    private final HandlerThread backgroundThread;
+    private final Handler backgroundHandler;
+
+    // all received payments since the notification was last cancelled
+    private int notificationCount = 0;
+    private Coin notificationAccumulatedAmount = Coin.ZERO;
+    private final Set<Address> notificationAddresses = new LinkedHashSet<>();
+
+    // payments received within the current window
+    private Coin batchAmount = Coin.ZERO;
+    private final Set<Address> batchAddresses = new LinkedHashSet<>();
+    @Nullable
+    private Sha256Hash batchLastTransactionHash = null;
+
+    private static final long BATCH_WINDOW_MS = 2 * DateUtils.SECOND_IN_MILLIS;
+
+    private static final Logger log = LoggerFactory.getLogger(CoinsReceivedNotifier.class);
+
+    public CoinsReceivedNotifier(final Context context, final AddressBookCache addressBook,
+            final Configuration config, @Nullable final String packageFlavor) {
+        this.context = context;
+        this.nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.addressBook = addressBook;
+        this.config = config;
+        this.packageFlavor = packageFlavor;
+        this.backgroundThread = new HandlerThread("coinsReceivedNotifier", Process.THREAD_PRIORITY_BACKGROUND);
+        this.backgroundThread.start();
+        this.backgroundHandler = new Handler(backgroundThread.getLooper());
+    }
+
+    public synchronized void notifyCoinsReceived(@Nullable final Address address, final Coin amount,
+            final Sha256Hash transactionHash) {
+        final boolean batchStarted = batchLastTransactionHash == null;
+        notificationCount++;
+        notificationAccumulatedAmount = notificationAccumulatedAmount.add(amount);
+        batchAmount = batchAmount.add(amount);
+        if (address != null) {
+            notificationAddresses.add(address);
+            batchAddresses.add(address);
+        }
+        batchLastTransactionHash = transactionHash;
+        if (batchStarted)
+            backgroundHandler.postDelayed(flush, BATCH_WINDOW_MS);
+    }
+
+    public synchronized void cancel() {
+        backgroundHandler.removeCallbacks(flush);
+        notificationCount = 0;
+        notificationAccumulatedAmount = Coin.ZERO;
+        notificationAddresses.clear();
+        batchAmount = Coin.ZERO;
+        batchAddresses.clear();
+        batchLastTransactionHash = null;
+        nm.cancel(Constants.NOTIFICATION_ID_COINS_RECEIVED);
+    }
+
+    /**
+     * Posts what's still pending right away, then stops the background thread.
+     */
+    public void stop() {
+        backgroundHandler.removeCallbacks(flush);
+        backgroundHandler.post(flush);
+        backgroundThread.quitSafely();
+    }
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            final int count;
+            final Coin accumulatedAmount;
+            final List<Address> addresses;
+            final Coin amount;
+            final List<Address> batchAddresses;
+            final Sha256Hash transactionHash;
+            synchronized (CoinsReceivedNotifier.this) {
+                if (batchLastTransactionHash == null)
+                    return;
+                count = notificationCount;
+                accumulatedAmount = notificationAccumulatedAmount;
+                addresses = new ArrayList<>(notificationAddresses);
+                amount = batchAmount;
+                batchAddresses = new ArrayList<>(CoinsReceivedNotifier.this.batchAddresses);
+                transactionHash = batchLastTransactionHash;
+                batchAmount = Coin.ZERO;
+                CoinsReceivedNotifier.this.batchAddresses.clear();
+                batchLastTransactionHash = null;
+            }
+            final MonetaryFormat btcFormat = config.getFormat();
+            log.info("notifying {} received payments, {} in total", count, btcFormat.format(accumulatedAmount));
+
+            final List<String> addressStrs = new ArrayList<>(addresses.size());
+            for (final Address address : addresses)
+                addressStrs.add(address.toBase58());
+            final Map<String, String> labels = addressBook.resolveLabels(addressStrs);
+            final String msgSuffix = packageFlavor != null ? " [" + packageFlavor + "]" : "";
+            final PendingIntent contentIntent = PendingIntent.getActivity(context, 0,
+                    new Intent(context, WalletActivity.class), 0);
+
+            // summary notification
+            final NotificationCompat.Builder summaryNotification = new NotificationCompat.Builder(context,
+                    Constants.NOTIFICATION_CHANNEL_ID_RECEIVED);
+            summaryNotification.setGroup(Constants.NOTIFICATION_GROUP_KEY_RECEIVED);
+            summaryNotification.setGroupSummary(true);
+            summaryNotification.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN);
+            summaryNotification.setWhen(System.currentTimeMillis());
+            summaryNotification.setSmallIcon(R.drawable.stat_notify_received_24dp);
+            summaryNotification.setContentTitle(
+                    context.getString(R.string.notification_coins_received_msg, btcFormat.format(accumulatedAmount))
+                            + msgSuffix);
+            if (!addresses.isEmpty())
+                summaryNotification.setContentText(describe(addresses, labels));
+            summaryNotification.setContentIntent(contentIntent);
+            nm.notify(Constants.NOTIFICATION_ID_COINS_RECEIVED, summaryNotification.build());
+
+            // child notification, one per batch
+            final NotificationCompat.Builder childNotification = new NotificationCompat.Builder(context,
+                    Constants.NOTIFICATION_CHANNEL_ID_RECEIVED);
+            childNotification.setGroup(Constants.NOTIFICATION_GROUP_KEY_RECEIVED);
+            childNotification.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN);
+            childNotification.setWhen(System.currentTimeMillis());
+            childNotification.setSmallIcon(R.drawable.stat_notify_received_24dp);
+            final String msg = context.getString(R.string.notification_coins_received_msg, btcFormat.format(amount))
+                    + msgSuffix;
+            childNotification.setTicker(msg);
+            childNotification.setContentTitle(msg);
+            if (!batchAddresses.isEmpty())
+                childNotification.setContentText(describe(batchAddresses, labels));
+            childNotification.setContentIntent(contentIntent);
+            childNotification.setSound(
+                    Uri.parse("android.resource://" + context.getPackageName() + "/" + R.raw.coins_received));
+            nm.notify(transactionHash.toString(), Constants.NOTIFICATION_ID_COINS_RECEIVED,
+                    childNotification.build());
+        }
+    };
+
+    private static String describe(final List<Address> addresses, final Map<String, String> labels) {
+        final StringBuilder text = new StringBuilder();
+        for (final Address address : addresses) {
+            if (text.length() > 0)
+                text.append(", ");
+            final String addressStr = address.toBase58();
+            final String label = labels.get(addressStr);
+            text.append(label != null ? label : addressStr);
+        }
+        return text.toString();
+    }
+}
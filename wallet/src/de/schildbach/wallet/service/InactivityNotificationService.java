@@ -89,17 +89,20 @@ public final class InactivityNotificationService extends IntentService {
 
     @Override
     protected void onHandleIntent(final Intent intent) {
-        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
-        final Wallet wallet = application.getWallet();
-
-        if (ACTION_DISMISS.equals(intent.getAction()))
+        final String action = intent.getAction();
+        if (ACTION_DISMISS.equals(action)) {
             handleDismiss();
-        else if (ACTION_DISMISS_FOREVER.equals(intent.getAction()))
+        } else if (ACTION_DISMISS_FOREVER.equals(action)) {
             handleDismissForever();
-        else if (ACTION_DONATE.equals(intent.getAction()))
-            handleDonate(wallet);
-        else
-            handleMaybeShowNotification(wallet);
+        } else {
+            // blocking is fine here, this runs on the service's worker thread and the service must not stop before
+            // the work is done
+            final Wallet wallet = application.getWallet();
+            if (ACTION_DONATE.equals(action))
+                handleDonate(wallet);
+            else
+                handleMaybeShowNotification(wallet);
+        }
     }
 
     private void handleMaybeShowNotification(final Wallet wallet) {
@@ -0,0 +1,330 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.listeners.AbstractPeerDataEventListener;
+import org.bitcoinj.core.listeners.PeerConnectedEventListener;
+import org.bitcoinj.core.listeners.PeerDisconnectedEventListener;
+import org.bitcoinj.utils.Threading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.net.InetAddresses;
+
+import android.text.format.DateUtils;
+
+/**
+ * Remembers how peers performed across restarts: how often connecting to them worked, how long sessions lasted,
+ * their latency and block download throughput, and whether they served a stale chain. Used for picking the peers
+ * that are most likely to sync us quickly.
+ *
+ * @author Andreas Schildbach
+ */
+public class PeerScoreboard extends AbstractPeerDataEventListener
+        implements PeerConnectedEventListener, PeerDisconnectedEventListener {
+    private final File file;
+    private final AbstractBlockChain blockChain;
+    private final Map<InetSocketAddress, Entry> entries = new HashMap<>();
+    private final Map<Peer, Session> sessions = new HashMap<>();
+    private long lastSaved = 0;
+
+    private static final int MAX_ENTRIES = 500;
+    private static final long MAX_AGE_MS = 30 * DateUtils.DAY_IN_MILLIS;
+    private static final long SHORT_SESSION_MS = 30 * DateUtils.SECOND_IN_MILLIS;
+    private static final long SAVE_INTERVAL_MS = 10 * DateUtils.MINUTE_IN_MILLIS;
+    private static final int STALE_CHAIN_TOLERANCE = 6;
+    /** Weight of a new sample in the moving averages. */
+    private static final double AVERAGE_WEIGHT = 0.3;
+    private static final double DEFAULT_LATENCY_MS = 500;
+    private static final double DEFAULT_BYTES_PER_SEC = 20000;
+
+    private static final Logger log = LoggerFactory.getLogger(PeerScoreboard.class);
+
+    private static final class Entry {
+        public int connects = 0;
+        public int failures = 0;
+        public int shortSessions = 0;
+        public int staleChains = 0;
+        public double latencyMs = 0;
+        public double bytesPerSec = 0;
+        public long lastSeen = 0;
+        public long lastSuccess = 0;
+
+        /** Higher is better. Unknown peers score in the middle. */
+        public double score() {
+            final double reliability = (connects + 1.0)
+                    / (connects + failures + shortSessions + 2.0 * staleChains + 2.0);
+            final double speed = bytesPerSec > 0 ? bytesPerSec : DEFAULT_BYTES_PER_SEC;
+            final double latency = latencyMs > 0 ? latencyMs : DEFAULT_LATENCY_MS;
+            return reliability * speed / (1 + latency / 1000);
+        }
+    }
+
+    private static final class Session {
+        public final long connectedAt;
+        public long firstBlockAt = 0;
+        public long lastBlockAt = 0;
+        public long bytes = 0;
+
+        public Session(final long connectedAt) {
+            this.connectedAt = connectedAt;
+        }
+    }
+
+    public PeerScoreboard(final File file, final AbstractBlockChain blockChain) {
+        this.file = file;
+        this.blockChain = blockChain;
+        load();
+    }
+
+    public void start(final PeerGroup peerGroup) {
+        peerGroup.addConnectedEventListener(Threading.SAME_THREAD, this);
+        peerGroup.addDisconnectedEventListener(Threading.SAME_THREAD, this);
+        peerGroup.addBlocksDownloadedEventListener(Threading.SAME_THREAD, this);
+    }
+
+    /**
+     * Stops scoring peers of the given group and saves the scoreboard.
+     */
+    public void stop(final PeerGroup peerGroup) {
+        peerGroup.removeBlocksDownloadedEventListener(this);
+        peerGroup.removeDisconnectedEventListener(this);
+        peerGroup.removeConnectedEventListener(this);
+        save();
+    }
+
+    /**
+     * Orders the candidates by how well they performed in the past, best first, and returns at most the given number
+     * of them. A third of the result is reserved for peers we don't know yet, so new peers get a chance too.
+     */
+    public synchronized List<InetSocketAddress> rank(final Collection<InetSocketAddress> candidates,
+            final int limit) {
+        final List<InetSocketAddress> known = new ArrayList<>();
+        final List<InetSocketAddress> unknown = new ArrayList<>();
+        for (final InetSocketAddress candidate : candidates)
+            (entries.containsKey(candidate) ? known : unknown).add(candidate);
+        Collections.shuffle(unknown);
+        Collections.sort(known, new Comparator<InetSocketAddress>() {
+            @Override
+            public int compare(final InetSocketAddress a, final InetSocketAddress b) {
+                return Double.compare(entries.get(b).score(), entries.get(a).score());
+            }
+        });
+
+        final List<InetSocketAddress> ranked = new ArrayList<>(limit);
+        final int numKnown = Math.min(known.size(), Math.max(limit - unknown.size(), limit - limit / 3));
+        ranked.addAll(known.subList(0, numKnown));
+        for (final InetSocketAddress address : unknown) {
+            if (ranked.size() >= limit)
+                break;
+            ranked.add(address);
+        }
+        for (final InetSocketAddress address : known.subList(numKnown, known.size())) {
+            if (ranked.size() >= limit)
+                break;
+            ranked.add(address);
+        }
+        return ranked;
+    }
+
+    /**
+     * @return score of the given peer, higher is better
+     */
+    public synchronized double score(final InetSocketAddress address) {
+        final Entry entry = entries.get(address);
+        return entry != null ? entry.score() : new Entry().score();
+    }
+
+    /**
+     * @return peers we successfully connected to within the given time, best first
+     */
+    public synchronized List<InetSocketAddress> getRecentlySucceeded(final long maxAgeMs, final int limit) {
+        final long now = System.currentTimeMillis();
+        final List<InetSocketAddress> recent = new ArrayList<>();
+        for (final Map.Entry<InetSocketAddress, Entry> mapEntry : entries.entrySet())
+            if (now - mapEntry.getValue().lastSuccess < maxAgeMs)
+                recent.add(mapEntry.getKey());
+        return rank(recent, limit);
+    }
+
+    @Override
+    public void onPeerConnected(final Peer peer, final int peerCount) {
+        final long now = System.currentTimeMillis();
+        final boolean stale = peer.getBestHeight() < blockChain.getBestChainHeight() - STALE_CHAIN_TOLERANCE;
+        final boolean dueForSave;
+        synchronized (this) {
+            sessions.put(peer, new Session(now));
+            final Entry entry = entry(peer.getAddress().getSocketAddress());
+            entry.connects++;
+            if (stale)
+                entry.staleChains++;
+            entry.lastSeen = now;
+            entry.lastSuccess = now;
+            dueForSave = now - lastSaved > SAVE_INTERVAL_MS;
+        }
+        // so the peer is remembered on the next warm start, even if we're killed before stopping
+        if (dueForSave)
+            save();
+    }
+
+    @Override
+    public void onPeerDisconnected(final Peer peer, final int peerCount) {
+        final long now = System.currentTimeMillis();
+        final long pingTime = peer.getPingTime();
+        synchronized (this) {
+            final Entry entry = entry(peer.getAddress().getSocketAddress());
+            entry.lastSeen = now;
+            final Session session = sessions.remove(peer);
+            if (session == null) {
+                entry.failures++;
+                return;
+            }
+            if (now - session.connectedAt < SHORT_SESSION_MS)
+                entry.shortSessions++;
+            if (pingTime < Long.MAX_VALUE)
+                entry.latencyMs = average(entry.latencyMs, pingTime);
+            final long downloadMs = session.lastBlockAt - session.firstBlockAt;
+            if (downloadMs >= DateUtils.SECOND_IN_MILLIS)
+                entry.bytesPerSec = average(entry.bytesPerSec, session.bytes * 1000.0 / downloadMs);
+        }
+    }
+
+    @Override
+    public void onBlocksDownloaded(final Peer peer, final Block block, final FilteredBlock filteredBlock,
+            final int blocksLeft) {
+        final long now = System.currentTimeMillis();
+        final long bytes;
+        if (filteredBlock != null)
+            bytes = filteredBlock.getMessageSize();
+        else if (block.getTransactions() == null)
+            bytes = Block.HEADER_SIZE;
+        else
+            bytes = block.getMessageSize();
+        synchronized (this) {
+            final Session session = sessions.get(peer);
+            if (session == null)
+                return;
+            if (session.firstBlockAt == 0)
+                session.firstBlockAt = now;
+            session.lastBlockAt = now;
+            session.bytes += bytes;
+        }
+    }
+
+    private Entry entry(final InetSocketAddress address) {
+        Entry entry = entries.get(address);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(address, entry);
+        }
+        return entry;
+    }
+
+    private static double average(final double average, final double sample) {
+        return average > 0 ? average + (sample - average) * AVERAGE_WEIGHT : sample;
+    }
+
+    private synchronized void load() {
+        if (!file.exists())
+            return;
+        final long now = System.currentTimeMillis();
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            final Splitter splitter = Splitter.on('\t');
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    final List<String> fields = splitter.splitToList(line);
+                    final InetSocketAddress address = new InetSocketAddress(
+                            InetAddresses.forString(fields.get(0)), Integer.parseInt(fields.get(1)));
+                    final Entry entry = new Entry();
+                    entry.connects = Integer.parseInt(fields.get(2));
+                    entry.failures = Integer.parseInt(fields.get(3));
+                    entry.shortSessions = Integer.parseInt(fields.get(4));
+                    entry.staleChains = Integer.parseInt(fields.get(5));
+                    entry.latencyMs = Double.parseDouble(fields.get(6));
+                    entry.bytesPerSec = Double.parseDouble(fields.get(7));
+                    entry.lastSeen = Long.parseLong(fields.get(8));
+                    entry.lastSuccess = Long.parseLong(fields.get(9));
+                    if (now - entry.lastSeen < MAX_AGE_MS)
+                        entries.put(address, entry);
+                } catch (final IllegalArgumentException | IndexOutOfBoundsException x) {
+                    log.info("ignoring peer scoreboard line: '{}'", line);
+                }
+            }
+            log.info("loaded {} peers from scoreboard '{}'", entries.size(), file);
+        } catch (final IOException x) {
+            log.warn("problem loading peer scoreboard", x);
+        }
+    }
+
+    private synchronized void save() {
+        lastSaved = System.currentTimeMillis();
+        final List<Map.Entry<InetSocketAddress, Entry>> sorted = new ArrayList<>(entries.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<InetSocketAddress, Entry>>() {
+            @Override
+            public int compare(final Map.Entry<InetSocketAddress, Entry> a,
+                    final Map.Entry<InetSocketAddress, Entry> b) {
+                return Long.compare(b.getValue().lastSeen, a.getValue().lastSeen);
+            }
+        });
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            for (final Map.Entry<InetSocketAddress, Entry> mapEntry : sorted.subList(0,
+                    Math.min(sorted.size(), MAX_ENTRIES))) {
+                final InetSocketAddress address = mapEntry.getKey();
+                final Entry entry = mapEntry.getValue();
+                writer.write(String.format(Locale.US, "%s\t%d\t%d\t%d\t%d\t%d\t%.1f\t%.1f\t%d\t%d\n",
+                        InetAddresses.toAddrString(address.getAddress()), address.getPort(), entry.connects,
+                        entry.failures, entry.shortSessions, entry.staleChains, entry.latencyMs, entry.bytesPerSec,
+                        entry.lastSeen, entry.lastSuccess));
+            }
+        } catch (final IOException x) {
+            log.warn("problem saving peer scoreboard", x);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file))
+            log.warn("problem saving peer scoreboard, cannot rename {}", tempFile);
+    }
+}
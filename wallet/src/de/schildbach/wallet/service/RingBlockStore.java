@@ -0,0 +1,317 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.store.SPVBlockStore;
+import org.bitcoinj.utils.Threading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Block store that keeps the most recent block headers in a memory-mapped ring buffer. The file format is the one of
+ * {@link SPVBlockStore}, so existing block stores keep working. Unlike {@link SPVBlockStore}, the capacity of the
+ * ring can be chosen when creating a new store, and the ring can be read sequentially via
+ * {@link #getRecentBlocks(int)}.
+ *
+ * @author Andreas Schildbach
+ */
+public class RingBlockStore implements BlockStore {
+    private final NetworkParameters params;
+    private final int capacity;
+    private final RandomAccessFile randomAccessFile;
+    private final FileLock fileLock;
+    @Nullable
+    private volatile MappedByteBuffer buffer;
+    @Nullable
+    private StoredBlock lastChainHead = null;
+    private final ReentrantLock lock = Threading.lock("blockstore");
+
+    private final Map<Sha256Hash, StoredBlock> blockCache = new LinkedHashMap<Sha256Hash, StoredBlock>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Sha256Hash, StoredBlock> entry) {
+            return size() > BLOCK_CACHE_SIZE;
+        }
+    };
+    private final Map<Sha256Hash, Boolean> notFoundCache = new LinkedHashMap<Sha256Hash, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Sha256Hash, Boolean> entry) {
+            return size() > NOT_FOUND_CACHE_SIZE;
+        }
+    };
+
+    // file layout of SPVBlockStore
+    private static final String HEADER_MAGIC = "SPVB";
+    private static final int FILE_PROLOGUE_BYTES = 1024;
+    private static final int RING_CURSOR_OFFSET = 4;
+    private static final int CHAIN_HEAD_OFFSET = 8;
+    private static final int HASH_SIZE = 32;
+    private static final int RECORD_SIZE = HASH_SIZE + StoredBlock.COMPACT_SERIALIZED_SIZE;
+    private static final int BLOCK_CACHE_SIZE = 2050; // enough for a difficulty transition
+    private static final int NOT_FOUND_CACHE_SIZE = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(RingBlockStore.class);
+
+    /**
+     * @param capacity
+     *            number of headers the ring holds, if the store is created. Existing stores keep their capacity.
+     */
+    public RingBlockStore(final NetworkParameters params, final File file, final int capacity)
+            throws BlockStoreException {
+        checkArgument(capacity > 0);
+        this.params = params;
+        final boolean exists = file.exists();
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            if (exists) {
+                final long length = randomAccessFile.length();
+                if (length < FILE_PROLOGUE_BYTES + RECORD_SIZE || (length - FILE_PROLOGUE_BYTES) % RECORD_SIZE != 0)
+                    throw new BlockStoreException("unexpected size of block store: " + length);
+                this.capacity = (int) ((length - FILE_PROLOGUE_BYTES) / RECORD_SIZE);
+                if (this.capacity != capacity)
+                    log.info("keeping capacity of existing block store: {} headers", this.capacity);
+            } else {
+                this.capacity = capacity;
+                randomAccessFile.setLength(getFileSize());
+            }
+
+            final FileChannel channel = randomAccessFile.getChannel();
+            fileLock = channel.tryLock();
+            if (fileLock == null)
+                throw new BlockStoreException("block store is in use");
+            this.randomAccessFile = randomAccessFile;
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, getFileSize());
+            this.buffer = buffer;
+
+            if (exists) {
+                final byte[] header = new byte[HEADER_MAGIC.length()];
+                buffer.get(header);
+                if (!HEADER_MAGIC.equals(new String(header, StandardCharsets.US_ASCII)))
+                    throw new BlockStoreException("header bytes do not equal " + HEADER_MAGIC);
+            } else {
+                buffer.put(HEADER_MAGIC.getBytes(StandardCharsets.US_ASCII));
+                buffer.putInt(RING_CURSOR_OFFSET, FILE_PROLOGUE_BYTES);
+                final Block genesis = params.getGenesisBlock().cloneAsHeader();
+                final StoredBlock storedGenesis = new StoredBlock(genesis, genesis.getWork(), 0);
+                put(storedGenesis);
+                setChainHead(storedGenesis);
+            }
+        } catch (final IOException | BlockStoreException x) {
+            this.buffer = null;
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close(); // also releases the file lock
+                } catch (final IOException x2) {
+                    // swallow
+                }
+            }
+            throw x instanceof BlockStoreException ? (BlockStoreException) x : new BlockStoreException(x);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int getFileSize() {
+        return FILE_PROLOGUE_BYTES + capacity * RECORD_SIZE;
+    }
+
+    @Override
+    public void put(final StoredBlock block) throws BlockStoreException {
+        final MappedByteBuffer buffer = checkOpen();
+        lock.lock();
+        try {
+            int cursor = buffer.getInt(RING_CURSOR_OFFSET);
+            if (cursor == getFileSize())
+                cursor = FILE_PROLOGUE_BYTES; // wrap around
+            buffer.position(cursor);
+            final Sha256Hash hash = block.getHeader().getHash();
+            notFoundCache.remove(hash);
+            buffer.put(hash.getBytes());
+            block.serializeCompact(buffer);
+            buffer.putInt(RING_CURSOR_OFFSET, buffer.position());
+            blockCache.put(hash, block);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @Nullable
+    public StoredBlock get(final Sha256Hash hash) throws BlockStoreException {
+        final MappedByteBuffer buffer = checkOpen();
+        lock.lock();
+        try {
+            final StoredBlock cacheHit = blockCache.get(hash);
+            if (cacheHit != null)
+                return cacheHit;
+            if (notFoundCache.containsKey(hash))
+                return null;
+
+            // walk backwards from the most recently written record, until found or wrapped around
+            final byte[] hashBytes = hash.getBytes();
+            final int start = buffer.getInt(RING_CURSOR_OFFSET);
+            int cursor = start;
+            do {
+                cursor = previousRecord(cursor);
+                if (hashEquals(buffer, cursor, hashBytes)) {
+                    final StoredBlock block = readBlock(buffer, cursor);
+                    blockCache.put(hash, block);
+                    return block;
+                }
+            } while (cursor != start);
+
+            notFoundCache.put(hash, Boolean.TRUE);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public StoredBlock getChainHead() throws BlockStoreException {
+        final MappedByteBuffer buffer = checkOpen();
+        lock.lock();
+        try {
+            if (lastChainHead == null) {
+                final byte[] headHash = new byte[HASH_SIZE];
+                buffer.position(CHAIN_HEAD_OFFSET);
+                buffer.get(headHash);
+                final Sha256Hash hash = Sha256Hash.wrap(headHash);
+                final StoredBlock block = get(hash);
+                if (block == null)
+                    throw new BlockStoreException("corrupted block store: could not find chain head: " + hash);
+                lastChainHead = block;
+            }
+            return lastChainHead;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setChainHead(final StoredBlock chainHead) throws BlockStoreException {
+        final MappedByteBuffer buffer = checkOpen();
+        lock.lock();
+        try {
+            lastChainHead = chainHead;
+            buffer.position(CHAIN_HEAD_OFFSET);
+            buffer.put(chainHead.getHeader().getHash().getBytes());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns blocks of the best chain, starting with the chain head and walking towards the genesis block. This is a
+     * single backwards pass over the ring rather than one lookup per block. Blocks of side chains are skipped, and the
+     * result ends early if the ring doesn't reach back far enough.
+     */
+    public List<StoredBlock> getRecentBlocks(final int maxBlocks) throws BlockStoreException {
+        final MappedByteBuffer buffer = checkOpen();
+        lock.lock();
+        try {
+            final List<StoredBlock> blocks = new ArrayList<>(maxBlocks);
+            byte[] expectedHash = getChainHead().getHeader().getHash().getBytes();
+            final int start = buffer.getInt(RING_CURSOR_OFFSET);
+            int cursor = start;
+            do {
+                cursor = previousRecord(cursor);
+                if (hashEquals(buffer, cursor, expectedHash)) {
+                    final StoredBlock block = readBlock(buffer, cursor);
+                    blocks.add(block);
+                    expectedHash = block.getHeader().getPrevBlockHash().getBytes();
+                }
+            } while (blocks.size() < maxBlocks && cursor != start);
+            return blocks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null)
+            return;
+        lock.lock();
+        try {
+            buffer.force();
+            this.buffer = null;
+            fileLock.release();
+            randomAccessFile.close();
+        } catch (final IOException x) {
+            throw new BlockStoreException(x);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public NetworkParameters getParams() {
+        return params;
+    }
+
+    private MappedByteBuffer checkOpen() throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null)
+            throw new BlockStoreException("block store closed");
+        return buffer;
+    }
+
+    private int previousRecord(final int cursor) {
+        final int previous = cursor - RECORD_SIZE;
+        return previous < FILE_PROLOGUE_BYTES ? getFileSize() - RECORD_SIZE : previous;
+    }
+
+    private static boolean hashEquals(final MappedByteBuffer buffer, final int offset, final byte[] hash) {
+        for (int i = 0; i < HASH_SIZE; i++)
+            if (buffer.get(offset + i) != hash[i])
+                return false;
+        return true;
+    }
+
+    private StoredBlock readBlock(final MappedByteBuffer buffer, final int offset) {
+        buffer.position(offset + HASH_SIZE);
+        return StoredBlock.deserializeCompact(params, buffer);
+    }
+}
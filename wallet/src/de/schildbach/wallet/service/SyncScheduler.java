@@ -0,0 +1,168 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.util.Calendar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.schildbach.wallet.Configuration;
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.text.format.DateUtils;
+
+/**
+ * Decides when the blockchain is synced next, learning from history: how long catching up took in the past, at
+ * which hours of the day the app is usually used and whether there are outgoing transactions waiting to confirm.
+ * The sync is scheduled just early enough for the blockchain not to lag behind more than the configured bound, and
+ * ahead of the time the app is likely used next.
+ *
+ * From Lollipop on, the sync is scheduled as a job that prefers an unmetered network and the device charging, but
+ * runs regardless once its deadline is reached.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SyncScheduler {
+    private static final int JOB_ID = 1;
+    /** Target spacing of blocks. */
+    private static final long BLOCK_INTERVAL_MS = 2 * DateUtils.MINUTE_IN_MILLIS;
+    private static final long MIN_INTERVAL_MS = AlarmManager.INTERVAL_FIFTEEN_MINUTES;
+    /** Share of app usage an hour of the day needs for being considered a usual time. */
+    private static final double USUAL_HOUR_SHARE = 0.1;
+
+    private static final Logger log = LoggerFactory.getLogger(SyncScheduler.class);
+
+    private SyncScheduler() {
+    }
+
+    public static void schedule(final WalletApplication application) {
+        final Configuration config = application.getConfiguration();
+        final long now = System.currentTimeMillis();
+        final long lastUsedAgo = config.getLastUsedAgo();
+        final boolean pendingOutgoing = config.hasPendingOutgoingTransactions();
+
+        // apply some backoff
+        final long maxLag = config.getSyncMaxLagMs();
+        final long lagBound;
+        if (pendingOutgoing || lastUsedAgo < Constants.LAST_USAGE_THRESHOLD_JUST_MS)
+            lagBound = maxLag;
+        else if (lastUsedAgo < Constants.LAST_USAGE_THRESHOLD_RECENTLY_MS)
+            lagBound = Math.max(maxLag, AlarmManager.INTERVAL_HALF_DAY);
+        else
+            lagBound = Math.max(maxLag, AlarmManager.INTERVAL_DAY);
+
+        // start early enough for the catch-up to finish within the bound
+        long interval = lagBound - expectedCatchUpMs(config, lagBound);
+
+        // be synced by the time the app is usually used
+        final long untilUsualUse = untilUsualUse(config.getUsageByHour(), now);
+        if (untilUsualUse < interval) {
+            final long expectedCatchUp = expectedCatchUpMs(config, untilUsualUse);
+            interval = untilUsualUse - expectedCatchUp;
+        }
+
+        // outgoing transactions want to be seen confirmed soon
+        if (pendingOutgoing)
+            interval = Math.min(interval, MIN_INTERVAL_MS);
+
+        interval = Math.max(interval, MIN_INTERVAL_MS);
+
+        log.info("last used {} minutes ago{}, rescheduling blockchain sync in roughly {} minutes",
+                lastUsedAgo / DateUtils.MINUTE_IN_MILLIS, pendingOutgoing ? ", outgoing transactions pending" : "",
+                interval / DateUtils.MINUTE_IN_MILLIS);
+
+        final AlarmManager alarmManager = (AlarmManager) application.getSystemService(Context.ALARM_SERVICE);
+        final PendingIntent alarmIntent = PendingIntent.getService(application, 0,
+                new Intent(application, BlockchainService.class), 0);
+        alarmManager.cancel(alarmIntent);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(application, interval, !pendingOutgoing);
+        } else {
+            // workaround for no inexact set() before KitKat
+            alarmManager.setInexactRepeating(AlarmManager.RTC_WAKEUP, now + interval, AlarmManager.INTERVAL_DAY,
+                    alarmIntent);
+        }
+    }
+
+    /**
+     * Schedules another attempt soon, for when the due sync could not be started.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static void scheduleRetry(final Context context) {
+        log.info("rescheduling blockchain sync in roughly {} minutes", MIN_INTERVAL_MS / DateUtils.MINUTE_IN_MILLIS);
+        scheduleJob(context, MIN_INTERVAL_MS, false);
+    }
+
+    private static long expectedCatchUpMs(final Configuration config, final long lagMs) {
+        return config.getSyncOverheadMs() + lagMs / BLOCK_INTERVAL_MS * config.getSyncPerBlockMs();
+    }
+
+    /**
+     * @return time until the next hour of the day the app is usually being used in, or {@link Long#MAX_VALUE} if
+     *         there is no such hour
+     */
+    private static long untilUsualUse(final int[] usageByHour, final long now) {
+        int total = 0;
+        for (final int count : usageByHour)
+            total += count;
+        if (total == 0)
+            return Long.MAX_VALUE;
+
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        for (int i = 0; i < usageByHour.length; i++) {
+            calendar.add(Calendar.HOUR_OF_DAY, 1);
+            if (usageByHour[calendar.get(Calendar.HOUR_OF_DAY)] >= total * USUAL_HOUR_SHARE)
+                return calendar.getTimeInMillis() - now;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(final Context context, final long interval, final boolean deferrable) {
+        final JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        final JobInfo.Builder job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, BlockchainSyncJobService.class));
+        if (deferrable) {
+            // prefer cheap conditions within the second half of the interval, but don't wait beyond it
+            job.setMinimumLatency(interval / 2);
+            job.setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED);
+            job.setRequiresCharging(true);
+        } else {
+            job.setMinimumLatency(interval);
+            job.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
+        }
+        job.setOverrideDeadline(interval);
+        jobScheduler.schedule(job.build());
+    }
+}
@@ -75,6 +75,7 @@ public final class UpgradeWalletService extends IntentService {
         org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
 
         final Wallet wallet = application.getWallet();
+        application.initMnemonicCode(); // upgrading and maintenance may create new seeds
 
         if (wallet.isDeterministicUpgradeRequired()) {
             log.info("detected non-HD wallet, upgrading");
@@ -22,20 +22,27 @@ import org.bitcoinj.wallet.Wallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.data.AddressBookDao;
 import de.schildbach.wallet.data.AddressBookEntry;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookRepository;
 import de.schildbach.wallet.util.WalletUtils;
 
+import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.DialogInterface.OnShowListener;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.widget.Button;
 import android.widget.TextView;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.DialogFragment;
@@ -73,8 +80,17 @@ public final class EditAddressBookEntryFragment extends DialogFragment {
     }
 
     private AbstractWalletActivity activity;
-    private AddressBookDao addressBookDao;
+    private AddressBookRepository addressBookRepository;
     private Wallet wallet;
+    private final Handler handler = new Handler();
+
+    @Nullable
+    private AlertDialog dialog;
+    private TextView viewLabel;
+    private boolean isOwn;
+    private boolean labelLoaded = false;
+    @Nullable
+    private String label = null;
 
     private static final Logger log = LoggerFactory.getLogger(EditAddressBookEntryFragment.class);
 
@@ -83,7 +99,8 @@ public final class EditAddressBookEntryFragment extends DialogFragment {
         super.onAttach(context);
         this.activity = (AbstractWalletActivity) context;
         final WalletApplication application = activity.getWalletApplication();
-        this.addressBookDao = AppDatabase.getDatabase(context).addressBookDao();
+        this.addressBookRepository = AddressBookRepository.get(context);
+        // only reachable from screens that already show wallet data, so the wallet is loaded and this won't block
         this.wallet = application.getWallet();
     }
 
@@ -101,19 +118,11 @@ public final class EditAddressBookEntryFragment extends DialogFragment {
 
         final LayoutInflater inflater = LayoutInflater.from(activity);
 
-        final String label = addressBookDao.resolveLabel(address.toBase58());
-
-        final boolean isAdd = label == null;
-        final boolean isOwn = wallet.isPubKeyHashMine(address.getHash160());
+        isOwn = wallet.isPubKeyHashMine(address.getHash160());
 
-        final DialogBuilder dialog = new DialogBuilder(activity);
-
-        if (isOwn)
-            dialog.setTitle(isAdd ? R.string.edit_address_book_entry_dialog_title_add_receive
-                    : R.string.edit_address_book_entry_dialog_title_edit_receive);
-        else
-            dialog.setTitle(isAdd ? R.string.edit_address_book_entry_dialog_title_add
-                    : R.string.edit_address_book_entry_dialog_title_edit);
+        final DialogBuilder builder = new DialogBuilder(activity);
+        builder.setTitle(isOwn ? R.string.edit_address_book_entry_dialog_title_add_receive
+                : R.string.edit_address_book_entry_dialog_title_add);
 
         final View view = inflater.inflate(R.layout.edit_address_book_entry_dialog, null);
 
@@ -121,39 +130,86 @@ public final class EditAddressBookEntryFragment extends DialogFragment {
         viewAddress.setText(WalletUtils.formatAddress(address, Constants.ADDRESS_FORMAT_GROUP_SIZE,
                 Constants.ADDRESS_FORMAT_LINE_SIZE));
 
-        final TextView viewLabel = (TextView) view.findViewById(R.id.edit_address_book_entry_label);
-        viewLabel.setText(label != null ? label : suggestedAddressLabel);
+        viewLabel = (TextView) view.findViewById(R.id.edit_address_book_entry_label);
 
-        dialog.setView(view);
+        builder.setView(view);
 
         final DialogInterface.OnClickListener onClickListener = new DialogInterface.OnClickListener() {
             @Override
             public void onClick(final DialogInterface dialog, final int which) {
+                final boolean isAdd = label == null;
                 if (which == DialogInterface.BUTTON_POSITIVE) {
                     final String newLabel = viewLabel.getText().toString().trim();
                     if (!newLabel.isEmpty())
-                        addressBookDao.insertOrUpdate(new AddressBookEntry(address.toBase58(), newLabel));
+                        addressBookRepository.insertOrUpdate(new AddressBookEntry(address.toBase58(), newLabel));
                     else if (!isAdd)
-                        addressBookDao.delete(address.toBase58());
+                        addressBookRepository.delete(address.toBase58());
                 } else if (which == DialogInterface.BUTTON_NEUTRAL) {
-                    addressBookDao.delete(address.toBase58());
+                    addressBookRepository.delete(address.toBase58());
                 }
 
                 dismiss();
             }
         };
 
-        dialog.setPositiveButton(isAdd ? R.string.button_add : R.string.edit_address_book_entry_dialog_button_edit,
-                onClickListener);
-        if (!isAdd)
-            dialog.setNeutralButton(R.string.button_delete, onClickListener);
-        dialog.setNegativeButton(R.string.button_cancel, new DialogInterface.OnClickListener() {
+        builder.setPositiveButton(R.string.button_add, onClickListener);
+        // hidden until we know there is an entry to delete
+        builder.setNeutralButton(R.string.button_delete, onClickListener);
+        builder.setNegativeButton(R.string.button_cancel, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(final DialogInterface dialog, final int which) {
                 dismissAllowingStateLoss();
             }
         });
 
-        return dialog.create();
+        final AlertDialog dialog = builder.create();
+        dialog.setOnShowListener(new OnShowListener() {
+            @Override
+            public void onShow(final DialogInterface d) {
+                EditAddressBookEntryFragment.this.dialog = dialog;
+                updateView();
+            }
+        });
+
+        // the label is loaded in the background, the dialog is filled in once it's there
+        final ListenableFuture<String> labelFuture = addressBookRepository.resolveLabel(address.toBase58());
+        labelFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        label = Futures.getUnchecked(labelFuture);
+                        labelLoaded = true;
+                        // don't overwrite what the user typed before a configuration change
+                        if (savedInstanceState == null || viewLabel.length() == 0)
+                            viewLabel.setText(label != null ? label : suggestedAddressLabel);
+                        updateView();
+                    }
+                });
+            }
+        }, MoreExecutors.directExecutor());
+
+        return dialog;
+    }
+
+    private void updateView() {
+        if (dialog == null)
+            return;
+
+        final boolean isAdd = label == null;
+        if (isOwn)
+            dialog.setTitle(isAdd ? R.string.edit_address_book_entry_dialog_title_add_receive
+                    : R.string.edit_address_book_entry_dialog_title_edit_receive);
+        else
+            dialog.setTitle(isAdd ? R.string.edit_address_book_entry_dialog_title_add
+                    : R.string.edit_address_book_entry_dialog_title_edit);
+
+        viewLabel.setEnabled(labelLoaded);
+
+        final Button positiveButton = dialog.getButton(DialogInterface.BUTTON_POSITIVE);
+        positiveButton.setText(isAdd ? R.string.button_add : R.string.edit_address_book_entry_dialog_button_edit);
+        positiveButton.setEnabled(labelLoaded);
+        dialog.getButton(DialogInterface.BUTTON_NEUTRAL).setVisibility(isAdd ? View.GONE : View.VISIBLE);
     }
 }
@@ -112,6 +112,7 @@ public class EncryptKeysDialogFragment extends DialogFragment {
         super.onAttach(context);
         this.activity = (AbstractWalletActivity) context;
         this.application = activity.getWalletApplication();
+        // only reachable from screens that already show wallet data, so the wallet is loaded and this won't block
         this.wallet = application.getWallet();
     }
 
@@ -83,8 +83,11 @@ public class MaybeMaintenanceViewModel extends AndroidViewModel {
     }
 
     public static class WalletMaintenanceRecommendedLiveData extends AbstractWalletLiveData<Boolean> {
+        private final WalletApplication application;
+
         public WalletMaintenanceRecommendedLiveData(final WalletApplication application) {
             super(application);
+            this.application = application;
         }
 
         @Override
@@ -99,6 +102,7 @@ public class MaybeMaintenanceViewModel extends AndroidViewModel {
                 @Override
                 public void run() {
                     org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                    application.initMnemonicCode();
                     try {
                         final ListenableFuture<List<Transaction>> result = wallet.doMaintenance(null, false);
                         postValue(!result.get().isEmpty());
@@ -249,6 +249,7 @@ public class ReportIssueDialogFragment extends DialogFragment {
         report.append("Outputs: " + numOutputs + " (spent: " + numSpentOutputs + ")\n");
         report.append(
                 "Last block seen: " + wallet.getLastBlockSeenHeight() + " (" + wallet.getLastBlockSeenHash() + ")\n");
+        report.append("Autosave: " + application.getWalletBytesWrittenLastHour() / 1024 + " kB within the last hour\n");
 
         report.append("Databases:");
         for (final String db : application.databaseList())
@@ -32,9 +32,8 @@ import org.slf4j.LoggerFactory;
 
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
-import de.schildbach.wallet.data.AddressBookDao;
 import de.schildbach.wallet.data.AddressBookEntry;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookRepository;
 import de.schildbach.wallet.data.PaymentIntent;
 import de.schildbach.wallet.ui.InputParser.StringInputParser;
 import de.schildbach.wallet.ui.scan.ScanActivity;
@@ -72,7 +71,7 @@ import androidx.lifecycle.ViewModelProviders;
  */
 public final class SendingAddressesFragment extends FancyListFragment {
     private AbstractWalletActivity activity;
-    private AddressBookDao addressBookDao;
+    private AddressBookRepository addressBookRepository;
     private final Handler handler = new Handler();
 
     private ArrayAdapter<AddressBookEntry> adapter;
@@ -87,7 +86,7 @@ public final class SendingAddressesFragment extends FancyListFragment {
     public void onAttach(final Context context) {
         super.onAttach(context);
         this.activity = (AbstractWalletActivity) context;
-        this.addressBookDao = AppDatabase.getDatabase(context).addressBookDao();
+        this.addressBookRepository = AddressBookRepository.get(context);
     }
 
     @Override
@@ -105,7 +104,7 @@ public final class SendingAddressesFragment extends FancyListFragment {
         viewModel.addressesToExclude.observe(this, new Observer<Set<String>>() {
             @Override
             public void onChanged(final Set<String> addressesToExclude) {
-                viewModel.addressBook = addressBookDao.getAllExcept(addressesToExclude);
+                viewModel.addressBook = addressBookRepository.getAllExcept(addressesToExclude);
                 viewModel.addressBook.observe(SendingAddressesFragment.this, new Observer<List<AddressBookEntry>>() {
                     @Override
                     public void onChanged(final List<AddressBookEntry> addressBook) {
@@ -325,7 +324,7 @@ public final class SendingAddressesFragment extends FancyListFragment {
     }
 
     private void handleRemove(final String address) {
-        addressBookDao.delete(address);
+        addressBookRepository.delete(address);
     }
 
     private void handleCopyToClipboard(final String address) {
@@ -17,7 +17,6 @@
 
 package de.schildbach.wallet.ui;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
@@ -43,6 +42,7 @@ import de.schildbach.wallet.data.AddressBookEntry;
 import de.schildbach.wallet.ui.TransactionsAdapter.ListItem.TransactionItem;
 import de.schildbach.wallet.ui.TransactionsAdapter.ListItem.WarningItem;
 import de.schildbach.wallet.util.Formats;
+import de.schildbach.wallet.util.TransactionAnalysis;
 import de.schildbach.wallet.util.WalletUtils;
 
 import android.content.Context;
@@ -60,30 +60,19 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 import androidx.annotation.Nullable;
 import androidx.cardview.widget.CardView;
+import androidx.paging.AsyncPagedListDiffer;
+import androidx.paging.PagedList;
+import androidx.recyclerview.widget.AsyncDifferConfig;
 import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.DiffUtil;
-import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.RecyclerView.ViewHolder;
 
 /**
  * @author Andreas Schildbach
  */
-public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListItem, RecyclerView.ViewHolder> {
-    public static List<ListItem> buildListItems(final Context context, final List<Transaction> transactions,
-            final WarningType warning, final @Nullable Wallet wallet,
-            final @Nullable Map<String, AddressBookEntry> addressBook, final MonetaryFormat format,
-            final int maxConnectedPeers, final @Nullable Sha256Hash selectedTransaction) {
-        final MonetaryFormat noCodeFormat = format.noCode();
-        final List<ListItem> items = new ArrayList<>(transactions.size() + 1);
-        if (warning != null)
-            items.add(new ListItem.WarningItem(warning));
-        for (final Transaction tx : transactions)
-            items.add(new ListItem.TransactionItem(context, tx, wallet, addressBook, noCodeFormat, maxConnectedPeers,
-                    tx.getHash().equals(selectedTransaction)));
-        return items;
-    }
-
+public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     public static class ListItem {
         public static class TransactionItem extends ListItem {
             public final Sha256Hash transactionHash;
@@ -101,6 +90,8 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
             public final Typeface addressTypeface;
             public final boolean addressSingleLine;
             @Nullable
+            public final Address counterpartyAddress;
+            @Nullable
             public final Coin fee;
             public final MonetaryFormat feeFormat;
             @Nullable
@@ -121,6 +112,17 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
             public TransactionItem(final Context context, final Transaction tx, final @Nullable Wallet wallet,
                     final @Nullable Map<String, AddressBookEntry> addressBook, final MonetaryFormat format,
                     final int maxConnectedPeers, final boolean isSelected) {
+                this(context, tx, wallet, addressLabel(tx, wallet, addressBook), format, tx.getExchangeRate(),
+                        maxConnectedPeers, isSelected);
+            }
+
+            /**
+             * @param exchangeRate
+             *            rate for showing the fiat value, usually the one recorded with the transaction
+             */
+            public TransactionItem(final Context context, final Transaction tx, final @Nullable Wallet wallet,
+                    final @Nullable String addressLabel, final MonetaryFormat format,
+                    final @Nullable ExchangeRate exchangeRate, final int maxConnectedPeers, final boolean isSelected) {
                 this.transactionHash = tx.getHash();
                 this.isSelected = isSelected;
 
@@ -132,9 +134,10 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 final int colorValueNegative = res.getColor(R.color.fg_value_negative);
                 final int colorError = res.getColor(R.color.fg_error);
 
-                final Coin value = tx.getValue(wallet);
-                final boolean sent = value.signum() < 0;
-                final boolean self = WalletUtils.isEntirelySelf(tx, wallet);
+                final TransactionAnalysis analysis = TransactionAnalysis.of(tx, wallet);
+                final Coin value = analysis.value;
+                final boolean sent = analysis.sent;
+                final boolean self = analysis.self;
                 final TransactionConfidence confidence = tx.getConfidence();
                 final ConfidenceType confidenceType = confidence.getConfidenceType();
                 final boolean isOwn = confidence.getSource().equals(TransactionConfidence.Source.SELF);
@@ -216,18 +219,8 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 this.timeColor = textColor;
 
                 // address
-                final Address address = sent ? WalletUtils.getToAddressOfSent(tx, wallet)
-                        : WalletUtils.getWalletAddressOfReceived(tx, wallet);
-                final String addressLabel;
-                if (addressBook == null || address == null) {
-                    addressLabel = null;
-                } else {
-                    final AddressBookEntry entry = addressBook.get(address.toString());
-                    if (entry != null)
-                        addressLabel = entry.getLabel();
-                    else
-                        addressLabel = null;
-                }
+                final Address address = analysis.address;
+                this.counterpartyAddress = address;
                 if (tx.isCoinBase()) {
                     this.address = SpannedString
                             .valueOf(context.getString(R.string.wallet_transactions_fragment_coinbase));
@@ -282,7 +275,6 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 }
 
                 // fiat value
-                final ExchangeRate exchangeRate = tx.getExchangeRate();
                 if (exchangeRate != null && !value.isZero()) {
                     this.fiat = exchangeRate.coinToFiat(value);
                     this.fiatFormat = Constants.LOCAL_FORMAT.code(0,
@@ -362,6 +354,18 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                     this.messageSingleLine = false;
                 }
             }
+
+            @Nullable
+            private static String addressLabel(final Transaction tx, final @Nullable Wallet wallet,
+                    final @Nullable Map<String, AddressBookEntry> addressBook) {
+                if (addressBook == null)
+                    return null;
+                final Address address = TransactionAnalysis.of(tx, wallet).address;
+                if (address == null)
+                    return null;
+                final AddressBookEntry entry = addressBook.get(address.toString());
+                return entry != null ? entry.getLabel() : null;
+            }
         }
 
         public static class WarningItem extends ListItem {
@@ -382,6 +386,9 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
 
     @Nullable
     private final OnClickListener onClickListener;
+    private final AsyncPagedListDiffer<ListItem> differ;
+    @Nullable
+    private WarningItem warning = null;
 
     private static final String CONFIDENCE_SYMBOL_IN_CONFLICT = "\u26A0"; // warning sign
     private static final String CONFIDENCE_SYMBOL_DEAD = "\u271D"; // latin cross
@@ -396,7 +403,7 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
 
     public TransactionsAdapter(final Context context, final int maxConnectedPeers,
             final @Nullable OnClickListener onClickListener) {
-        super(new DiffUtil.ItemCallback<ListItem>() {
+        final DiffUtil.ItemCallback<ListItem> diffCallback = new DiffUtil.ItemCallback<ListItem>() {
             @Override
             public boolean areItemsTheSame(final ListItem oldItem, final ListItem newItem) {
                 if (oldItem instanceof TransactionItem) {
@@ -413,6 +420,8 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
 
             @Override
             public boolean areContentsTheSame(final ListItem oldItem, final ListItem newItem) {
+                if (oldItem == newItem) // reused by TransactionsListModel
+                    return true;
                 if (oldItem instanceof TransactionItem) {
                     final TransactionItem oldTransactionItem = (TransactionItem) oldItem;
                     final TransactionItem newTransactionItem = (TransactionItem) newItem;
@@ -546,13 +555,67 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 }
                 return changes;
             }
-        });
+        };
+        this.differ = new AsyncPagedListDiffer<>(updateCallback, new AsyncDifferConfig.Builder<>(diffCallback).build());
         this.context = context;
         this.inflater = LayoutInflater.from(context);
 
         this.onClickListener = onClickListener;
     }
 
+    public void submitList(final PagedList<ListItem> list) {
+        differ.submitList(list);
+    }
+
+    /** The warning is shown as a header on top of the paged transactions. */
+    public void setWarning(@Nullable final WarningType warningType) {
+        final WarningItem oldWarning = this.warning;
+        this.warning = warningType != null ? new WarningItem(warningType) : null;
+        if (oldWarning == null && warning != null)
+            notifyItemInserted(0);
+        else if (oldWarning != null && warning == null)
+            notifyItemRemoved(0);
+        else if (oldWarning != null && oldWarning.type != warning.type)
+            notifyItemChanged(0);
+    }
+
+    private int headerCount() {
+        return warning != null ? 1 : 0;
+    }
+
+    private ListItem getItem(final int position) {
+        if (warning != null && position == 0)
+            return warning;
+        return differ.getItem(position - headerCount());
+    }
+
+    @Override
+    public int getItemCount() {
+        return headerCount() + differ.getItemCount();
+    }
+
+    private final ListUpdateCallback updateCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(final int position, final int count) {
+            notifyItemRangeInserted(position + headerCount(), count);
+        }
+
+        @Override
+        public void onRemoved(final int position, final int count) {
+            notifyItemRangeRemoved(position + headerCount(), count);
+        }
+
+        @Override
+        public void onMoved(final int fromPosition, final int toPosition) {
+            notifyItemMoved(fromPosition + headerCount(), toPosition + headerCount());
+        }
+
+        @Override
+        public void onChanged(final int position, final int count, final Object payload) {
+            notifyItemRangeChanged(position + headerCount(), count, payload);
+        }
+    };
+
     @Override
     public int getItemViewType(final int position) {
         final ListItem listItem = getItem(position);
@@ -0,0 +1,177 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.TransactionIndexDao;
+import de.schildbach.wallet.data.TransactionIndexEntry;
+import de.schildbach.wallet.ui.TransactionsAdapter.ListItem;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.arch.core.util.Function;
+import androidx.paging.DataSource;
+import androidx.paging.ItemKeyedDataSource;
+import androidx.room.InvalidationTracker;
+
+/**
+ * Pages list items from the transaction index, keyed by position in the list order. Entries whose transaction is
+ * not (or no longer) part of the wallet are left out, rather than leaving holes until the index has caught up.
+ * Invalidates itself if the index changes.
+ *
+ * @author Andreas Schildbach
+ */
+public class TransactionsDataSource extends ItemKeyedDataSource<TransactionIndexEntry, ListItem> {
+    private final AppDatabase database;
+    private final TransactionIndexDao dao;
+    @Nullable
+    private final Integer direction;
+    private final Function<TransactionIndexEntry, ListItem> toItem;
+    private final Map<ListItem, TransactionIndexEntry> keys = Collections
+            .synchronizedMap(new IdentityHashMap<ListItem, TransactionIndexEntry>());
+
+    private final InvalidationTracker.Observer observer = new InvalidationTracker.Observer("transaction_index") {
+        @Override
+        public void onInvalidated(@NonNull final Set<String> tables) {
+            invalidate();
+        }
+    };
+
+    public static class Factory extends DataSource.Factory<TransactionIndexEntry, ListItem> {
+        private final AppDatabase database;
+        @Nullable
+        private final Integer direction;
+        private final Function<TransactionIndexEntry, ListItem> toItem;
+
+        /**
+         * @param direction
+         *            direction of transactions to list, or {@code null} for all
+         * @param toItem
+         *            maps an entry to its list item, or to {@code null} if its transaction is gone
+         */
+        public Factory(final AppDatabase database, @Nullable final Integer direction,
+                final Function<TransactionIndexEntry, ListItem> toItem) {
+            this.database = database;
+            this.direction = direction;
+            this.toItem = toItem;
+        }
+
+        @Override
+        public DataSource<TransactionIndexEntry, ListItem> create() {
+            return new TransactionsDataSource(database, direction, toItem);
+        }
+    }
+
+    private TransactionsDataSource(final AppDatabase database, @Nullable final Integer direction,
+            final Function<TransactionIndexEntry, ListItem> toItem) {
+        this.database = database;
+        this.dao = database.transactionIndexDao();
+        this.direction = direction;
+        this.toItem = toItem;
+        database.getInvalidationTracker().addObserver(observer);
+        addInvalidatedCallback(new InvalidatedCallback() {
+            @Override
+            public void onInvalidated() {
+                TransactionsDataSource.this.database.getInvalidationTracker().removeObserver(observer);
+            }
+        });
+    }
+
+    @Override
+    public void loadInitial(@NonNull final LoadInitialParams<TransactionIndexEntry> params,
+            @NonNull final LoadInitialCallback<ListItem> callback) {
+        final TransactionIndexEntry key = params.requestedInitialKey;
+        final int size = params.requestedLoadSize;
+        final List<ListItem> items = new ArrayList<>(size);
+        List<TransactionIndexEntry> entries = key != null
+                ? dao.getFrom(direction, key.isPending(), key.getUpdateTime(), key.getHash(), size)
+                : dao.getFirst(direction, size);
+        while (true) {
+            final TransactionIndexEntry last = addItems(entries, items);
+            if (!items.isEmpty() || entries.size() < size || isInvalid())
+                break;
+            entries = dao.getAfter(direction, last.isPending(), last.getUpdateTime(), last.getHash(), size);
+        }
+        callback.onResult(items);
+    }
+
+    @Override
+    public void loadAfter(@NonNull final LoadParams<TransactionIndexEntry> params,
+            @NonNull final LoadCallback<ListItem> callback) {
+        TransactionIndexEntry key = params.key;
+        final int size = params.requestedLoadSize;
+        final List<ListItem> items = new ArrayList<>(size);
+        while (true) {
+            final List<TransactionIndexEntry> entries = dao.getAfter(direction, key.isPending(),
+                    key.getUpdateTime(), key.getHash(), size);
+            key = addItems(entries, items);
+            // an empty result means the end of the list, so keep going while entries are left out
+            if (!items.isEmpty() || entries.size() < size || isInvalid())
+                break;
+        }
+        callback.onResult(items);
+    }
+
+    @Override
+    public void loadBefore(@NonNull final LoadParams<TransactionIndexEntry> params,
+            @NonNull final LoadCallback<ListItem> callback) {
+        TransactionIndexEntry key = params.key;
+        final int size = params.requestedLoadSize;
+        final List<ListItem> items = new ArrayList<>(size);
+        while (true) {
+            final List<TransactionIndexEntry> entries = dao.getBefore(direction, key.isPending(),
+                    key.getUpdateTime(), key.getHash(), size);
+            key = addItems(entries, items);
+            if (!items.isEmpty() || entries.size() < size || isInvalid())
+                break;
+        }
+        // entries come closest first
+        Collections.reverse(items);
+        callback.onResult(items);
+    }
+
+    @NonNull
+    @Override
+    public TransactionIndexEntry getKey(@NonNull final ListItem item) {
+        return keys.get(item);
+    }
+
+    /**
+     * @return the last of the given entries
+     */
+    @Nullable
+    private TransactionIndexEntry addItems(final List<TransactionIndexEntry> entries, final List<ListItem> items) {
+        TransactionIndexEntry last = null;
+        for (final TransactionIndexEntry entry : entries) {
+            final ListItem item = toItem.apply(entry);
+            if (item != null) {
+                keys.put(item, entry);
+                items.add(item);
+            }
+            last = entry;
+        }
+        return last;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Transaction.Purpose;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.utils.MonetaryFormat;
+import org.bitcoinj.wallet.Wallet;
+
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.data.ExchangeRateHistory;
+import de.schildbach.wallet.data.TransactionIndexEntry;
+import de.schildbach.wallet.ui.TransactionsAdapter.ListItem.TransactionItem;
+import de.schildbach.wallet.util.TransactionAnalysis;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import androidx.annotation.Nullable;
+
+/**
+ * Bounded cache of the items behind the paged transactions list. Items are keyed by transaction hash and only rebuilt
+ * if anything they are derived from actually changed, so re-loading the visible window is cheap.
+ *
+ * @author Andreas Schildbach
+ */
+public class TransactionsListModel {
+    private final Map<Sha256Hash, Entry> entries = new LinkedHashMap<Sha256Hash, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Sha256Hash, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    @Nullable
+    private String formatFingerprint;
+    @Nullable
+    private MonetaryFormat format;
+    private int maxConnectedPeers;
+    @Nullable
+    private Sha256Hash selectedTransaction;
+
+    private static final int MAX_ENTRIES = 256;
+    private static final int MAX_DEPTH = Math.max(Constants.MAX_NUM_CONFIRMATIONS,
+            Constants.NETWORK_PARAMETERS.getSpendableCoinbaseDepth());
+
+    private static final class Entry {
+        public final State state;
+        public final TransactionItem item;
+
+        public Entry(final State state, final TransactionItem item) {
+            this.state = state;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Everything a {@link TransactionItem} is derived from that can change over the lifetime of a transaction. The
+     * value comes from {@link TransactionAnalysis}, so it's only free of script scanning if the analysis is cached.
+     */
+    private static final class State {
+        public final ConfidenceType confidenceType;
+        public final TransactionConfidence.Source source;
+        public final int depth;
+        public final int numBroadcastPeers;
+        public final long updateTime;
+        public final Coin value;
+        public final Purpose purpose;
+        @Nullable
+        public final String memo;
+        @Nullable
+        public final org.bitcoinj.utils.ExchangeRate exchangeRate;
+        public final boolean recent;
+        public final boolean delayed;
+        @Nullable
+        public final String label;
+        public final boolean selected;
+
+        public State(final Transaction tx, final Coin value,
+                @Nullable final org.bitcoinj.utils.ExchangeRate exchangeRate, final Wallet wallet, final long now,
+                @Nullable final String label, final boolean selected) {
+            final TransactionConfidence confidence = tx.getConfidence();
+            this.confidenceType = confidence.getConfidenceType();
+            this.source = confidence.getSource();
+            this.depth = confidenceType == ConfidenceType.BUILDING
+                    ? Math.min(confidence.getDepthInBlocks(), MAX_DEPTH) : 0;
+            this.numBroadcastPeers = confidence.numBroadcastPeers();
+            final Date updateTime = tx.getUpdateTime();
+            this.updateTime = updateTime != null ? updateTime.getTime() : 0;
+            this.value = value;
+            this.purpose = tx.getPurpose();
+            this.memo = tx.getMemo();
+            this.exchangeRate = exchangeRate;
+            // relative time is rendered as time of day within the last day, as date afterwards
+            this.recent = now - this.updateTime < DateUtils.DAY_IN_MILLIS;
+            this.delayed = confidenceType == ConfidenceType.PENDING
+                    && (updateTime == null || wallet.getLastBlockSeenTimeSecs() * 1000
+                            - this.updateTime > Constants.DELAYED_TRANSACTION_THRESHOLD_MS);
+            this.label = label;
+            this.selected = selected;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this)
+                return true;
+            if (o == null || o.getClass() != getClass())
+                return false;
+            final State other = (State) o;
+            return this.confidenceType == other.confidenceType && this.source == other.source
+                    && this.depth == other.depth && this.numBroadcastPeers == other.numBroadcastPeers
+                    && this.updateTime == other.updateTime && this.value.equals(other.value)
+                    && this.purpose == other.purpose && Objects.equals(this.memo, other.memo)
+                    && exchangeRateEquals(this.exchangeRate, other.exchangeRate) && this.recent == other.recent
+                    && this.delayed == other.delayed && Objects.equals(this.label, other.label)
+                    && this.selected == other.selected;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(confidenceType, depth, numBroadcastPeers, updateTime, value, label, selected);
+        }
+
+        // rates are looked up anew for each state, and bitcoinj's exchange rate doesn't implement equals()
+        private static boolean exchangeRateEquals(@Nullable final org.bitcoinj.utils.ExchangeRate a,
+                @Nullable final org.bitcoinj.utils.ExchangeRate b) {
+            if (a == null || b == null)
+                return a == b;
+            return a.coin.equals(b.coin) && a.fiat.equals(b.fiat);
+        }
+    }
+
+    /**
+     * Sets the format used for rendering values. Changing the format invalidates all cached items.
+     *
+     * @return true if anything changed
+     */
+    public synchronized boolean setFormat(final MonetaryFormat format, final int maxConnectedPeers) {
+        final MonetaryFormat noCodeFormat = format.noCode();
+        final String formatFingerprint = noCodeFormat.format(Coin.COIN).toString();
+        if (formatFingerprint.equals(this.formatFingerprint) && maxConnectedPeers == this.maxConnectedPeers)
+            return false;
+        entries.clear();
+        this.formatFingerprint = formatFingerprint;
+        this.format = noCodeFormat;
+        this.maxConnectedPeers = maxConnectedPeers;
+        return true;
+    }
+
+    public synchronized void setSelectedTransaction(@Nullable final Sha256Hash selectedTransaction) {
+        this.selectedTransaction = selectedTransaction;
+    }
+
+    /**
+     * Returns the list item for the given index entry, reusing the cached item if nothing relevant changed. The fiat
+     * value is shown with the rate recorded with the transaction, or else with the historical rate of the given
+     * currency on the day of the transaction.
+     *
+     * @return item, or {@code null} if the transaction is not (or no longer) part of the wallet
+     */
+    @Nullable
+    public TransactionItem item(final Context context, final TransactionIndexEntry indexEntry, final Wallet wallet,
+            @Nullable final ExchangeRateHistory exchangeRateHistory, @Nullable final String exchangeCurrencyCode) {
+        final Sha256Hash hash = indexEntry.getTransactionHash();
+        final Transaction tx = wallet.getTransaction(hash);
+        if (tx == null)
+            return null;
+        final MonetaryFormat format;
+        final int maxConnectedPeers;
+        final boolean selected;
+        synchronized (this) {
+            format = this.format;
+            maxConnectedPeers = this.maxConnectedPeers;
+            selected = hash.equals(selectedTransaction);
+        }
+        final Coin value = TransactionAnalysis.of(tx, wallet).value;
+        org.bitcoinj.utils.ExchangeRate exchangeRate = tx.getExchangeRate();
+        if (exchangeRate == null && exchangeRateHistory != null && exchangeCurrencyCode != null) {
+            final Date updateTime = tx.getUpdateTime();
+            if (updateTime != null)
+                exchangeRate = exchangeRateHistory.getRate(exchangeCurrencyCode, updateTime.getTime());
+        }
+        final State state = new State(tx, value, exchangeRate, wallet, System.currentTimeMillis(),
+                indexEntry.getLabel(), selected);
+        synchronized (this) {
+            final Entry entry = entries.get(hash);
+            if (entry != null && entry.state.equals(state))
+                return entry.item;
+        }
+        // build outside of the lock, worst case two threads build the same item
+        final TransactionItem item = new TransactionItem(context, tx, wallet, indexEntry.getLabel(), format,
+                exchangeRate, maxConnectedPeers, selected);
+        synchronized (this) {
+            if (format == this.format)
+                entries.put(hash, new Entry(state, item));
+        }
+        return item;
+    }
+}
@@ -18,6 +18,7 @@
 package de.schildbach.wallet.ui;
 
 import java.util.List;
+import java.util.Map;
 
 import org.bitcoinj.core.Address;
 import org.bitcoinj.uri.BitcoinURI;
@@ -28,9 +29,7 @@ import org.slf4j.LoggerFactory;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.data.AddressBookDao;
 import de.schildbach.wallet.data.AddressBookEntry;
-import de.schildbach.wallet.data.AppDatabase;
 import de.schildbach.wallet.util.Qr;
 import de.schildbach.wallet.util.Toast;
 import de.schildbach.wallet.util.WalletUtils;
@@ -58,7 +57,6 @@ import androidx.lifecycle.ViewModelProviders;
 public final class WalletAddressesFragment extends FancyListFragment {
     private WalletApplication application;
     private AbstractWalletActivity activity;
-    private AddressBookDao addressBookDao;
     private ClipboardManager clipboardManager;
 
     private WalletAddressesAdapter adapter;
@@ -72,7 +70,6 @@ public final class WalletAddressesFragment extends FancyListFragment {
         super.onAttach(context);
         this.activity = (AbstractWalletActivity) context;
         this.application = activity.getWalletApplication();
-        this.addressBookDao = AppDatabase.getDatabase(context).addressBookDao();
         this.clipboardManager = (ClipboardManager) activity.getSystemService(Context.CLIPBOARD_SERVICE);
     }
 
@@ -100,10 +97,10 @@ public final class WalletAddressesFragment extends FancyListFragment {
                 adapter.setWallet(wallet);
             }
         });
-        viewModel.addressBook.observe(this, new Observer<List<AddressBookEntry>>() {
+        viewModel.addressBook.observe(this, new Observer<Map<String, AddressBookEntry>>() {
             @Override
-            public void onChanged(final List<AddressBookEntry> addressBook) {
-                adapter.setAddressBook(AddressBookEntry.asMap(addressBook));
+            public void onChanged(final Map<String, AddressBookEntry> addressBook) {
+                adapter.setAddressBook(addressBook);
             }
         });
         viewModel.ownName.observe(this, new Observer<String>() {
@@ -155,7 +152,7 @@ public final class WalletAddressesFragment extends FancyListFragment {
             @Override
             public boolean onPrepareActionMode(final ActionMode mode, final Menu menu) {
                 final String address = getAddress(position).toBase58();
-                final String label = addressBookDao.resolveLabel(address);
+                final String label = viewModel.addressBook.resolveLabel(address);
                 mode.setTitle(label != null ? label
                         : WalletUtils.formatHash(address, Constants.ADDRESS_FORMAT_GROUP_SIZE, 0));
                 return true;
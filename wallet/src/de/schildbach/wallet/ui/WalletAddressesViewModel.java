@@ -31,8 +31,7 @@ import org.bitcoinj.wallet.listeners.KeyChainEventListener;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.AbstractWalletLiveData;
-import de.schildbach.wallet.data.AddressBookEntry;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookCache;
 import de.schildbach.wallet.data.ConfigOwnNameLiveData;
 import de.schildbach.wallet.data.WalletLiveData;
 
@@ -40,7 +39,6 @@ import android.app.Application;
 import android.graphics.Bitmap;
 import android.os.AsyncTask;
 import androidx.lifecycle.AndroidViewModel;
-import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 /**
@@ -50,7 +48,7 @@ public class WalletAddressesViewModel extends AndroidViewModel {
     private final WalletApplication application;
     public final IssuedReceiveAddressesLiveData issuedReceiveAddresses;
     public final ImportedAddressesLiveData importedAddresses;
-    public final LiveData<List<AddressBookEntry>> addressBook;
+    public final AddressBookCache addressBook;
     public final WalletLiveData wallet;
     public final ConfigOwnNameLiveData ownName;
     public final MutableLiveData<Event<Bitmap>> showBitmapDialog = new MutableLiveData<>();
@@ -61,7 +59,7 @@ public class WalletAddressesViewModel extends AndroidViewModel {
         this.application = (WalletApplication) application;
         this.issuedReceiveAddresses = new IssuedReceiveAddressesLiveData(this.application);
         this.importedAddresses = new ImportedAddressesLiveData(this.application);
-        this.addressBook = AppDatabase.getDatabase(this.application).addressBookDao().getAll();
+        this.addressBook = AddressBookCache.get(this.application);
         this.wallet = new WalletLiveData(this.application);
         this.ownName = new ConfigOwnNameLiveData(this.application);
     }
@@ -25,6 +25,7 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.ExchangeRate;
+import de.schildbach.wallet.data.WalletLoadingState;
 import de.schildbach.wallet.service.BlockchainState;
 import de.schildbach.wallet.ui.send.FeeCategory;
 import de.schildbach.wallet.ui.send.SendCoinsActivity;
@@ -96,6 +97,12 @@ public final class WalletBalanceFragment extends Fragment {
                 ViewModelProviders.of(activity).get(WalletActivityViewModel.class).balanceLoadingFinished();
             }
         });
+        viewModel.getWalletLoadingState().observe(this, new Observer<WalletLoadingState>() {
+            @Override
+            public void onChanged(final WalletLoadingState walletLoadingState) {
+                updateView();
+            }
+        });
         if (Constants.ENABLE_EXCHANGE_RATES) {
             viewModel.getExchangeRate().observe(this, new Observer<ExchangeRate>() {
                 @Override
@@ -177,6 +184,15 @@ public final class WalletBalanceFragment extends Fragment {
         final BlockchainState blockchainState = viewModel.getBlockchainState().getValue();
         final Coin balance = viewModel.getBalance().getValue();
         final ExchangeRate exchangeRate = viewModel.getExchangeRate().getValue();
+        final WalletLoadingState walletLoadingState = viewModel.getWalletLoadingState().getValue();
+
+        if (balance == null && walletLoadingState != null && !walletLoadingState.isLoaded()) {
+            viewProgress.setText(walletLoadingState.phase == WalletLoadingState.Phase.CONSISTENCY_CHECK
+                    ? R.string.wallet_balance_fragment_loading_checking : R.string.wallet_balance_fragment_loading);
+            viewProgress.setVisibility(View.VISIBLE);
+            viewBalance.setVisibility(View.INVISIBLE);
+            return;
+        }
 
         final boolean showProgress;
 
@@ -21,9 +21,11 @@ import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.BlockchainStateLiveData;
 import de.schildbach.wallet.data.SelectedExchangeRateLiveData;
 import de.schildbach.wallet.data.WalletBalanceLiveData;
+import de.schildbach.wallet.data.WalletLoadingState;
 
 import android.app.Application;
 import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
 
 /**
  * @author Andreas Schildbach
@@ -56,4 +58,8 @@ public class WalletBalanceViewModel extends AndroidViewModel {
             exchangeRate = new SelectedExchangeRateLiveData(application);
         return exchangeRate;
     }
+
+    public LiveData<WalletLoadingState> getWalletLoadingState() {
+        return application.getWalletLoadingState();
+    }
 }
@@ -17,9 +17,6 @@
 
 package de.schildbach.wallet.ui;
 
-import java.util.List;
-import java.util.Set;
-
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.ScriptException;
 import org.bitcoinj.core.Sha256Hash;
@@ -33,13 +30,12 @@ import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.data.AddressBookDao;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookCache;
 import de.schildbach.wallet.ui.TransactionsAdapter.ListItem;
 import de.schildbach.wallet.ui.TransactionsAdapter.WarningType;
 import de.schildbach.wallet.ui.send.RaiseFeeDialogFragment;
 import de.schildbach.wallet.util.Qr;
-import de.schildbach.wallet.util.WalletUtils;
+import de.schildbach.wallet.util.TransactionAnalysis;
 
 import android.app.admin.DevicePolicyManager;
 import android.content.Context;
@@ -66,6 +62,7 @@ import android.widget.ViewAnimator;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
+import androidx.paging.PagedList;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -75,7 +72,7 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
     private AbstractWalletActivity activity;
     private WalletApplication application;
     private Configuration config;
-    private AddressBookDao addressBookDao;
+    private AddressBookCache addressBook;
     private DevicePolicyManager devicePolicyManager;
 
     private ViewAnimator viewGroup;
@@ -97,7 +94,7 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
         this.activity = (AbstractWalletActivity) context;
         this.application = activity.getWalletApplication();
         this.config = application.getConfiguration();
-        this.addressBookDao = AppDatabase.getDatabase(context).addressBookDao();
+        this.addressBook = AddressBookCache.get(context);
         this.devicePolicyManager = (DevicePolicyManager) application.getSystemService(Context.DEVICE_POLICY_SERVICE);
     }
 
@@ -113,10 +110,10 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
                 activity.invalidateOptionsMenu();
             }
         });
-        viewModel.transactions.observe(this, new Observer<Set<Transaction>>() {
+        viewModel.transactionsCount.observe(this, new Observer<Integer>() {
             @Override
-            public void onChanged(final Set<Transaction> transactions) {
-                if (transactions.isEmpty()) {
+            public void onChanged(final Integer transactionsCount) {
+                if (transactionsCount == 0) {
                     viewGroup.setDisplayedChild(1);
 
                     final WalletTransactionsViewModel.Direction direction = viewModel.direction.getValue();
@@ -143,9 +140,15 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
                 }
             }
         });
-        viewModel.list.observe(this, new Observer<List<ListItem>>() {
+        viewModel.warning.observe(this, new Observer<WarningType>() {
+            @Override
+            public void onChanged(final WarningType warning) {
+                adapter.setWarning(warning);
+            }
+        });
+        viewModel.list.observe(this, new Observer<PagedList<ListItem>>() {
             @Override
-            public void onChanged(final List<ListItem> listItems) {
+            public void onChanged(final PagedList<ListItem> listItems) {
                 adapter.submitList(listItems);
                 ViewModelProviders.of(activity).get(WalletActivityViewModel.class).transactionsLoadingFinished();
             }
@@ -268,9 +271,7 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
     public void onTransactionMenuClick(final View view, final Sha256Hash transactionHash) {
         final Wallet wallet = viewModel.wallet.getValue();
         final Transaction tx = wallet.getTransaction(transactionHash);
-        final boolean txSent = tx.getValue(wallet).signum() < 0;
-        final Address txAddress = txSent ? WalletUtils.getToAddressOfSent(tx, wallet)
-                : WalletUtils.getWalletAddressOfReceived(tx, wallet);
+        final Address txAddress = TransactionAnalysis.of(tx, wallet).address;
         final byte[] txSerialized = tx.unsafeBitcoinSerialize();
         final boolean txRotation = tx.getPurpose() == Purpose.KEY_ROTATION;
 
@@ -280,7 +281,7 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
                 .findItem(R.id.wallet_transactions_context_edit_address);
         if (!txRotation && txAddress != null) {
             editAddressMenuItem.setVisible(true);
-            final boolean isAdd = addressBookDao.resolveLabel(txAddress.toBase58()) == null;
+            final boolean isAdd = addressBook.resolveLabel(txAddress.toBase58()) == null;
             final boolean isOwn = wallet.isPubKeyHashMine(txAddress.getHash160());
 
             if (isOwn)
@@ -17,45 +17,39 @@
 
 package de.schildbach.wallet.ui;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.bitcoinj.core.Address;
-import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Sha256Hash;
-import org.bitcoinj.core.Transaction;
-import org.bitcoinj.core.Transaction.Purpose;
-import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
-import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
 import org.bitcoinj.utils.MonetaryFormat;
-import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
-import org.bitcoinj.wallet.listeners.WalletChangeEventListener;
-import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
-import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
-import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
 
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.data.AbstractWalletLiveData;
-import de.schildbach.wallet.data.AddressBookEntry;
 import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.ConfigExchangeCurrencyLiveData;
 import de.schildbach.wallet.data.ConfigFormatLiveData;
+import de.schildbach.wallet.data.ExchangeRate;
+import de.schildbach.wallet.data.ExchangeRateHistory;
+import de.schildbach.wallet.data.ExchangeRatesRepository;
+import de.schildbach.wallet.data.TransactionIndexEntry;
+import de.schildbach.wallet.data.TransactionsConfidenceLiveData;
 import de.schildbach.wallet.data.WalletLiveData;
+import de.schildbach.wallet.ui.TransactionsAdapter.ListItem;
+import de.schildbach.wallet.ui.TransactionsAdapter.ListItem.TransactionItem;
 
 import android.app.Application;
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
+import androidx.annotation.Nullable;
+import androidx.arch.core.util.Function;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Observer;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
 
 /**
  * @author Andreas Schildbach
@@ -66,67 +60,119 @@ public class WalletTransactionsViewModel extends AndroidViewModel {
     }
 
     private final WalletApplication application;
-    public final TransactionsLiveData transactions;
+    private final AppDatabase database;
+    public final LiveData<Integer> transactionsCount;
     public final WalletLiveData wallet;
     private final TransactionsConfidenceLiveData transactionsConfidence;
-    private final LiveData<List<AddressBookEntry>> addressBook;
     private final ConfigFormatLiveData configFormat;
+    @Nullable
+    private final ConfigExchangeCurrencyLiveData configExchangeCurrency;
     public final MutableLiveData<Direction> direction = new MutableLiveData<>();
     private final MutableLiveData<Sha256Hash> selectedTransaction = new MutableLiveData<>();
     public final MutableLiveData<TransactionsAdapter.WarningType> warning = new MutableLiveData<>();
-    public final MediatorLiveData<List<TransactionsAdapter.ListItem>> list = new MediatorLiveData<>();
+    public final MediatorLiveData<PagedList<ListItem>> list = new MediatorLiveData<>();
     public final MutableLiveData<Event<Bitmap>> showBitmapDialog = new MutableLiveData<>();
     public final MutableLiveData<Event<Address>> showEditAddressBookEntryDialog = new MutableLiveData<>();
     public final MutableLiveData<Event<String>> showReportIssueDialog = new MutableLiveData<>();
+    private final TransactionsListModel listModel = new TransactionsListModel();
+    @Nullable
+    private final ExchangeRatesRepository exchangeRates;
+    @Nullable
+    private final ExchangeRateHistory exchangeRateHistory;
+    @Nullable
+    private LiveData<PagedList<ListItem>> pagedList = null;
+
+    private static final PagedList.Config PAGED_LIST_CONFIG = new PagedList.Config.Builder().setPageSize(20)
+            .setPrefetchDistance(20).setEnablePlaceholders(false).build();
 
     public WalletTransactionsViewModel(final Application application) {
         super(application);
         this.application = (WalletApplication) application;
-        this.transactions = new TransactionsLiveData(this.application);
+        this.database = AppDatabase.getDatabase(this.application);
+        this.transactionsCount = database.transactionIndexDao().getCount();
         this.wallet = new WalletLiveData(this.application);
         this.transactionsConfidence = new TransactionsConfidenceLiveData(this.application);
-        this.addressBook = AppDatabase.getDatabase(this.application).addressBookDao().getAll();
         this.configFormat = new ConfigFormatLiveData(this.application);
-        this.list.addSource(transactions, new Observer<Set<Transaction>>() {
-            @Override
-            public void onChanged(final Set<Transaction> transactions) {
-                maybePostList();
-            }
-        });
+        this.exchangeRates = Constants.ENABLE_EXCHANGE_RATES ? ExchangeRatesRepository.get(this.application) : null;
+        this.exchangeRateHistory = Constants.ENABLE_EXCHANGE_RATES ? ExchangeRateHistory.get(this.application)
+                : null;
+        this.configExchangeCurrency = Constants.ENABLE_EXCHANGE_RATES
+                ? new ConfigExchangeCurrencyLiveData(this.application) : null;
         this.list.addSource(wallet, new Observer<Wallet>() {
             @Override
             public void onChanged(final Wallet wallet) {
-                maybePostList();
-            }
-        });
-        this.list.addSource(transactionsConfidence, new Observer<Void>() {
-            @Override
-            public void onChanged(final Void v) {
-                maybePostList();
+                invalidateList();
             }
         });
-        this.list.addSource(addressBook, new Observer<List<AddressBookEntry>>() {
+        this.list.addSource(transactionsConfidence, new Observer<Set<Sha256Hash>>() {
             @Override
-            public void onChanged(final List<AddressBookEntry> addressBook) {
-                maybePostList();
+            public void onChanged(final Set<Sha256Hash> changedTransactions) {
+                // depth and broadcast peers aren't indexed, so the loaded window needs to be reloaded if it
+                // contains any of the changed transactions
+                final PagedList<ListItem> currentList = list.getValue();
+                if (currentList == null)
+                    return;
+                for (final ListItem item : currentList.snapshot()) {
+                    if (item instanceof TransactionItem
+                            && changedTransactions.contains(((TransactionItem) item).transactionHash)) {
+                        invalidateList();
+                        return;
+                    }
+                }
             }
         });
+        if (exchangeRateHistory != null) {
+            this.list.addSource(exchangeRateHistory.getBackfilled(), new Observer<String>() {
+                @Override
+                public void onChanged(final String currencyCode) {
+                    // transactions without a recorded rate may have one now
+                    invalidateList();
+                }
+            });
+        }
+        if (configExchangeCurrency != null) {
+            this.list.addSource(configExchangeCurrency, new Observer<String>() {
+                private boolean initial = true;
+                @Nullable
+                private String currencyCode;
+
+                @Override
+                public void onChanged(final String currencyCode) {
+                    // also called on each activation, so only act on actual changes
+                    final boolean changed = !initial && !Objects.equals(currencyCode, this.currencyCode);
+                    initial = false;
+                    this.currencyCode = currencyCode;
+                    if (changed) {
+                        // fiat values of transactions without a recorded rate are in the selected currency
+                        invalidateList();
+                        exchangeRates.maybeRefresh();
+                        exchangeRates.maybeBackfill();
+                    }
+                }
+            });
+        }
         this.list.addSource(direction, new Observer<Direction>() {
             @Override
             public void onChanged(final Direction direction) {
-                maybePostList();
+                loadList();
             }
         });
         this.list.addSource(selectedTransaction, new Observer<Sha256Hash>() {
             @Override
             public void onChanged(final Sha256Hash selectedTransaction) {
-                maybePostList();
+                listModel.setSelectedTransaction(selectedTransaction);
+                invalidateList();
             }
         });
         this.list.addSource(configFormat, new Observer<MonetaryFormat>() {
             @Override
             public void onChanged(final MonetaryFormat format) {
-                maybePostList();
+                final int maxConnectedPeers = WalletTransactionsViewModel.this.application.maxConnectedPeers();
+                final boolean changed = listModel.setFormat(format, maxConnectedPeers);
+                if (pagedList == null)
+                    loadList();
+                else if (changed)
+                    invalidateList();
             }
         });
     }
@@ -147,152 +193,43 @@ public class WalletTransactionsViewModel extends AndroidViewModel {
         this.warning.setValue(warning);
     }
 
-    private void maybePostList() {
-        AsyncTask.execute(new Runnable() {
+    private void loadList() {
+        if (configFormat.getValue() == null)
+            return;
+        if (pagedList != null)
+            list.removeSource(pagedList);
+        final Direction direction = this.direction.getValue();
+        final Integer directionFilter;
+        if (direction == null)
+            directionFilter = null;
+        else
+            directionFilter = direction == Direction.SENT ? TransactionIndexEntry.DIRECTION_SENT
+                    : TransactionIndexEntry.DIRECTION_RECEIVED;
+        pagedList = new LivePagedListBuilder<>(new TransactionsDataSource.Factory(database, directionFilter, toItem),
+                PAGED_LIST_CONFIG).build();
+        list.addSource(pagedList, new Observer<PagedList<ListItem>>() {
             @Override
-            public void run() {
-                org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
-                final Set<Transaction> transactions = WalletTransactionsViewModel.this.transactions.getValue();
-                final MonetaryFormat format = configFormat.getValue();
-                final Map<String, AddressBookEntry> addressBook = AddressBookEntry
-                        .asMap(WalletTransactionsViewModel.this.addressBook.getValue());
-                if (transactions != null && format != null && addressBook != null) {
-                    final List<Transaction> filteredTransactions = new ArrayList<Transaction>(transactions.size());
-                    final Wallet wallet = application.getWallet();
-                    final Direction direction = WalletTransactionsViewModel.this.direction.getValue();
-                    for (final Transaction tx : transactions) {
-                        final boolean sent = tx.getValue(wallet).signum() < 0;
-                        final boolean isInternal = tx.getPurpose() == Purpose.KEY_ROTATION;
-                        if ((direction == Direction.RECEIVED && !sent && !isInternal) || direction == null
-                                || (direction == Direction.SENT && sent && !isInternal))
-                            filteredTransactions.add(tx);
-                    }
-
-                    Collections.sort(filteredTransactions, TRANSACTION_COMPARATOR);
-
-                    list.postValue(TransactionsAdapter.buildListItems(application, filteredTransactions,
-                            warning.getValue(), wallet, addressBook, format, application.maxConnectedPeers(),
-                            selectedTransaction.getValue()));
-                }
+            public void onChanged(final PagedList<ListItem> pagedList) {
+                list.setValue(pagedList);
             }
         });
     }
 
-    private static final Comparator<Transaction> TRANSACTION_COMPARATOR = new Comparator<Transaction>() {
-        @Override
-        public int compare(final Transaction tx1, final Transaction tx2) {
-            final boolean pending1 = tx1.getConfidence().getConfidenceType() == ConfidenceType.PENDING;
-            final boolean pending2 = tx2.getConfidence().getConfidenceType() == ConfidenceType.PENDING;
-            if (pending1 != pending2)
-                return pending1 ? -1 : 1;
-
-            final Date updateTime1 = tx1.getUpdateTime();
-            final long time1 = updateTime1 != null ? updateTime1.getTime() : 0;
-            final Date updateTime2 = tx2.getUpdateTime();
-            final long time2 = updateTime2 != null ? updateTime2.getTime() : 0;
-            if (time1 != time2)
-                return time1 > time2 ? -1 : 1;
-
-            return tx1.getHash().compareTo(tx2.getHash());
-        }
-    };
-
-    public static class TransactionsLiveData extends AbstractWalletLiveData<Set<Transaction>> {
-        private static final long THROTTLE_MS = 1000;
-
-        public TransactionsLiveData(final WalletApplication application) {
-            super(application, THROTTLE_MS);
-        }
-
-        @Override
-        protected void onWalletActive(final Wallet wallet) {
-            addWalletListener(wallet);
-            load();
-        }
-
-        @Override
-        protected void onWalletInactive(final Wallet wallet) {
-            removeWalletListener(wallet);
-        }
-
-        private void addWalletListener(final Wallet wallet) {
-            wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, walletListener);
-            wallet.addCoinsSentEventListener(Threading.SAME_THREAD, walletListener);
-            wallet.addReorganizeEventListener(Threading.SAME_THREAD, walletListener);
-            wallet.addChangeEventListener(Threading.SAME_THREAD, walletListener);
-        }
-
-        private void removeWalletListener(final Wallet wallet) {
-            wallet.removeChangeEventListener(walletListener);
-            wallet.removeReorganizeEventListener(walletListener);
-            wallet.removeCoinsSentEventListener(walletListener);
-            wallet.removeCoinsReceivedEventListener(walletListener);
-        }
-
-        @Override
-        protected void load() {
-            final Wallet wallet = getWallet();
-            AsyncTask.execute(new Runnable() {
-                @Override
-                public void run() {
-                    org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
-                    postValue(wallet.getTransactions(true));
-                }
-            });
-        }
-
-        private final WalletListener walletListener = new WalletListener();
-
-        private class WalletListener implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
-                WalletReorganizeEventListener, WalletChangeEventListener {
-            @Override
-            public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
-                    final Coin newBalance) {
-                triggerLoad();
-            }
-
-            @Override
-            public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
-                    final Coin newBalance) {
-                triggerLoad();
-            }
-
-            @Override
-            public void onReorganize(final Wallet wallet) {
-                triggerLoad();
-            }
-
-            @Override
-            public void onWalletChanged(final Wallet wallet) {
-                triggerLoad();
-            }
-        }
+    private void invalidateList() {
+        final PagedList<ListItem> currentList = list.getValue();
+        if (currentList != null)
+            currentList.getDataSource().invalidate();
     }
 
-    private static class TransactionsConfidenceLiveData extends AbstractWalletLiveData<Void>
-            implements TransactionConfidenceEventListener {
-        public TransactionsConfidenceLiveData(final WalletApplication application) {
-            super(application);
-        }
-
-        @Override
-        protected void onWalletActive(final Wallet wallet) {
-            wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, this);
-        }
-
+    private final Function<TransactionIndexEntry, ListItem> toItem = new Function<TransactionIndexEntry, ListItem>() {
         @Override
-        protected void onWalletInactive(final Wallet wallet) {
-            wallet.removeTransactionConfidenceEventListener(this);
+        public ListItem apply(final TransactionIndexEntry entry) {
+            // called on the paging fetch thread, only for the window being loaded
+            org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+            final ExchangeRate exchangeRate = exchangeRates != null
+                    ? exchangeRates.bestRate(application.getConfiguration().getExchangeCurrencyCode()) : null;
+            return listModel.item(application, entry, application.getWallet(), exchangeRateHistory,
+                    exchangeRate != null ? exchangeRate.getCurrencyCode() : null);
         }
-
-        @Override
-        public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
-            triggerLoad();
-        }
-
-        @Override
-        protected void load() {
-            postValue(null);
-        }
-    }
+    };
 }
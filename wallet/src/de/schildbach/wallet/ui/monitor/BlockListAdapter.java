@@ -38,6 +38,7 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.data.AddressBookEntry;
 import de.schildbach.wallet.ui.CurrencyTextView;
+import de.schildbach.wallet.util.TransactionAnalysis;
 import de.schildbach.wallet.util.WalletUtils;
 
 import android.content.Context;
@@ -118,13 +119,11 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Blo
                 final boolean isCoinBase = tx.isCoinBase();
                 final boolean isInternal = tx.getPurpose() == Purpose.KEY_ROTATION;
 
-                this.value = tx.getValue(wallet);
-                final boolean sent = value.signum() < 0;
-                final boolean self = WalletUtils.isEntirelySelf(tx, wallet);
-                if (sent)
-                    this.address = WalletUtils.getToAddressOfSent(tx, wallet);
-                else
-                    this.address = WalletUtils.getWalletAddressOfReceived(tx, wallet);
+                final TransactionAnalysis analysis = TransactionAnalysis.of(tx, wallet);
+                this.value = analysis.value;
+                final boolean sent = analysis.sent;
+                final boolean self = analysis.self;
+                this.address = analysis.address;
 
                 if (isInternal || self)
                     this.fromTo = context.getString(R.string.symbol_internal);
@@ -87,7 +87,6 @@ public final class BlockListFragment extends Fragment implements BlockListAdapte
             public void onChanged(final List<StoredBlock> blocks) {
                 maybeSubmitList();
                 viewGroup.setDisplayedChild(1);
-                viewModel.getTransactions().loadTransactions();
             }
         });
         viewModel.getTransactions().observe(this, new Observer<Set<Transaction>>() {
@@ -96,6 +95,12 @@ public final class BlockListFragment extends Fragment implements BlockListAdapte
                 maybeSubmitList();
             }
         });
+        viewModel.getTransactionsConfidence().observe(this, new Observer<Set<Sha256Hash>>() {
+            @Override
+            public void onChanged(final Set<Sha256Hash> changedTransactions) {
+                viewModel.getTransactions().updateTransactions(changedTransactions);
+            }
+        });
         viewModel.getWallet().observe(this, new Observer<Wallet>() {
             @Override
             public void onChanged(final Wallet wallet) {
@@ -130,7 +135,7 @@ public final class BlockListFragment extends Fragment implements BlockListAdapte
     private void maybeSubmitList() {
         final List<StoredBlock> blocks = viewModel.getBlocks().getValue();
         if (blocks != null) {
-            final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(viewModel.addressBook.getValue());
+            final Map<String, AddressBookEntry> addressBook = viewModel.addressBook.getValue();
             adapter.submitList(BlockListAdapter.buildListItems(activity, blocks, viewModel.getTime().getValue(),
                     config.getFormat(), viewModel.getTransactions().getValue(), viewModel.getWallet().getValue(),
                     addressBook));
@@ -30,9 +30,9 @@ import org.bitcoinj.wallet.Wallet;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.AbstractWalletLiveData;
-import de.schildbach.wallet.data.AddressBookEntry;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookCache;
 import de.schildbach.wallet.data.TimeLiveData;
+import de.schildbach.wallet.data.TransactionsConfidenceLiveData;
 import de.schildbach.wallet.data.WalletLiveData;
 import de.schildbach.wallet.service.BlockchainService;
 
@@ -45,6 +45,7 @@ import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.os.AsyncTask;
 import android.os.IBinder;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
@@ -56,6 +57,7 @@ public class BlockListViewModel extends AndroidViewModel {
     private final WalletApplication application;
     private BlocksLiveData blocks;
     private TransactionsLiveData transactions;
+    private TransactionsConfidenceLiveData transactionsConfidence;
     private WalletLiveData wallet;
     private TimeLiveData time;
 
@@ -64,7 +66,7 @@ public class BlockListViewModel extends AndroidViewModel {
     public BlockListViewModel(final Application application) {
         super(application);
         this.application = (WalletApplication) application;
-        this.addressBook = AppDatabase.getDatabase(this.application).addressBookDao().getAll();
+        this.addressBook = AddressBookCache.get(this.application);
     }
 
     public BlocksLiveData getBlocks() {
@@ -79,13 +81,19 @@ public class BlockListViewModel extends AndroidViewModel {
         return transactions;
     }
 
+    public TransactionsConfidenceLiveData getTransactionsConfidence() {
+        if (transactionsConfidence == null)
+            transactionsConfidence = new TransactionsConfidenceLiveData(application);
+        return transactionsConfidence;
+    }
+
     public WalletLiveData getWallet() {
         if (wallet == null)
             wallet = new WalletLiveData(application);
         return wallet;
     }
 
-    public final LiveData<List<AddressBookEntry>> addressBook;
+    public final AddressBookCache addressBook;
 
     public TimeLiveData getTime() {
         if (time == null)
@@ -137,6 +145,10 @@ public class BlockListViewModel extends AndroidViewModel {
     }
 
     public static class TransactionsLiveData extends AbstractWalletLiveData<Set<Transaction>> {
+        // authoritative set, only touched by tasks on the serial executor; copies of it are posted
+        @Nullable
+        private Set<Transaction> transactions = null;
+
         private TransactionsLiveData(final WalletApplication application) {
             super(application);
         }
@@ -150,20 +162,55 @@ public class BlockListViewModel extends AndroidViewModel {
             final Wallet wallet = getWallet();
             if (wallet == null)
                 return;
-            AsyncTask.execute(new Runnable() {
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
                 @Override
                 public void run() {
                     org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
                     final Set<Transaction> transactions = wallet.getTransactions(false);
                     final Set<Transaction> filteredTransactions = new HashSet<Transaction>(transactions.size());
-                    for (final Transaction tx : transactions) {
-                        final Map<Sha256Hash, Integer> appearsIn = tx.getAppearsInHashes();
-                        if (appearsIn != null && !appearsIn.isEmpty()) // TODO filter by updateTime
+                    for (final Transaction tx : transactions)
+                        if (appearsInBlock(tx)) // TODO filter by updateTime
                             filteredTransactions.add(tx);
+                    TransactionsLiveData.this.transactions = filteredTransactions;
+                    postValue(new HashSet<>(filteredTransactions));
+                }
+            });
+        }
+
+        /**
+         * Only looks at the given transactions, rather than re-filtering the whole wallet. Posts a new value only if
+         * a transaction entered or left a block. Runs after any pending load or update, so no change gets lost.
+         */
+        public void updateTransactions(final Set<Sha256Hash> changedTransactions) {
+            final Wallet wallet = getWallet();
+            if (wallet == null)
+                return;
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Set<Transaction> transactions = TransactionsLiveData.this.transactions;
+                    if (transactions == null)
+                        return;
+                    org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                    boolean changed = false;
+                    for (final Sha256Hash hash : changedTransactions) {
+                        final Transaction tx = wallet.getTransaction(hash);
+                        if (tx == null)
+                            continue;
+                        if (appearsInBlock(tx))
+                            changed |= transactions.add(tx);
+                        else
+                            changed |= transactions.remove(tx);
                     }
-                    postValue(filteredTransactions);
+                    if (changed)
+                        postValue(new HashSet<>(transactions));
                 }
             });
         }
+
+        private static boolean appearsInBlock(final Transaction tx) {
+            final Map<Sha256Hash, Integer> appearsIn = tx.getAppearsInHashes();
+            return appearsIn != null && !appearsIn.isEmpty();
+        }
     }
 }
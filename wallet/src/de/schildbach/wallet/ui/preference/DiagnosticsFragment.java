@@ -20,6 +20,7 @@ package de.schildbach.wallet.ui.preference;
 import java.util.Locale;
 
 import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.wallet.Wallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +34,7 @@ import android.app.Activity;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceScreen;
@@ -43,6 +45,7 @@ import android.preference.PreferenceScreen;
 public final class DiagnosticsFragment extends PreferenceFragment {
     private Activity activity;
     private WalletApplication application;
+    private final Handler handler = new Handler();
 
     private static final String PREFS_KEY_INITIATE_RESET = "initiate_reset";
     private static final String PREFS_KEY_EXTENDED_PUBLIC_KEY = "extended_public_key";
@@ -97,9 +100,21 @@ public final class DiagnosticsFragment extends PreferenceFragment {
     }
 
     private void handleExtendedPublicKey() {
-        final DeterministicKey extendedKey = application.getWallet().getWatchingKey();
-        final String base58 = String.format(Locale.US, "%s?c=%d&h=bip32",
-                extendedKey.serializePubB58(Constants.NETWORK_PARAMETERS), extendedKey.getCreationTimeSeconds());
-        ExtendedPublicKeyFragment.show(getFragmentManager(), (CharSequence) base58);
+        application.getWalletAsync(new WalletApplication.OnWalletLoadedListener() {
+            @Override
+            public void onWalletLoaded(final Wallet wallet) {
+                final DeterministicKey extendedKey = wallet.getWatchingKey();
+                final String base58 = String.format(Locale.US, "%s?c=%d&h=bip32",
+                        extendedKey.serializePubB58(Constants.NETWORK_PARAMETERS),
+                        extendedKey.getCreationTimeSeconds());
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isAdded())
+                            ExtendedPublicKeyFragment.show(getFragmentManager(), (CharSequence) base58);
+                    }
+                });
+            }
+        });
     }
 }
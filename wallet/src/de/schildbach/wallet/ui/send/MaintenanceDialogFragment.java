@@ -105,6 +105,7 @@ public class MaintenanceDialogFragment extends DialogFragment {
         super.onAttach(context);
         this.activity = (AbstractWalletActivity) context;
         this.application = activity.getWalletApplication();
+        // only reachable from screens that already show wallet data, so the wallet is loaded and this won't block
         this.wallet = application.getWallet();
     }
 
@@ -232,6 +233,7 @@ public class MaintenanceDialogFragment extends DialogFragment {
             @Override
             public void run() {
                 org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                application.initMnemonicCode();
 
                 try {
                     wallet.doMaintenance(encryptionKey, true);
@@ -124,6 +124,7 @@ public class RaiseFeeDialogFragment extends DialogFragment {
         this.activity = (AbstractWalletActivity) context;
         this.application = activity.getWalletApplication();
         this.config = application.getConfiguration();
+        // only reachable from screens that already show wallet data, so the wallet is loaded and this won't block
         this.wallet = application.getWallet();
     }
 
@@ -48,14 +48,14 @@ import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.params.KeyParameter;
 
 import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.Futures;
 
 import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.data.AddressBookDao;
 import de.schildbach.wallet.data.AddressBookEntry;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookRepository;
 import de.schildbach.wallet.data.ExchangeRate;
 import de.schildbach.wallet.data.PaymentIntent;
 import de.schildbach.wallet.data.PaymentIntent.Standard;
@@ -129,7 +129,7 @@ public final class SendCoinsFragment extends Fragment {
     private AbstractWalletActivity activity;
     private WalletApplication application;
     private Configuration config;
-    private AddressBookDao addressBookDao;
+    private AddressBookRepository addressBookRepository;
     private ContentResolver contentResolver;
     private FragmentManager fragmentManager;
     @Nullable
@@ -316,7 +316,8 @@ public final class SendCoinsFragment extends Fragment {
                     final String trimmedConstraint = constraint.toString().trim();
                     final FilterResults results = new FilterResults();
                     if (viewModel.validatedAddress == null && !trimmedConstraint.isEmpty()) {
-                        final List<AddressBookEntry> entries = addressBookDao.get(trimmedConstraint);
+                        final List<AddressBookEntry> entries = Futures
+                                .getUnchecked(addressBookRepository.search(trimmedConstraint));
                         results.values = entries;
                         results.count = entries.size();
                     } else {
@@ -351,7 +352,7 @@ public final class SendCoinsFragment extends Fragment {
         this.activity = (AbstractWalletActivity) context;
         this.application = activity.getWalletApplication();
         this.config = application.getConfiguration();
-        this.addressBookDao = AppDatabase.getDatabase(context).addressBookDao();
+        this.addressBookRepository = AddressBookRepository.get(context);
         this.contentResolver = application.getContentResolver();
         this.fragmentManager = getFragmentManager();
     }
@@ -368,9 +369,9 @@ public final class SendCoinsFragment extends Fragment {
                 updateView();
             }
         });
-        viewModel.addressBook.observe(this, new Observer<List<AddressBookEntry>>() {
+        viewModel.addressBook.observe(this, new Observer<Map<String, AddressBookEntry>>() {
             @Override
-            public void onChanged(final List<AddressBookEntry> addressBook) {
+            public void onChanged(final Map<String, AddressBookEntry> addressBook) {
                 updateView();
             }
         });
@@ -678,7 +679,7 @@ public final class SendCoinsFragment extends Fragment {
             final String addressStr = receivingAddressView.getText().toString().trim();
             if (!addressStr.isEmpty()
                     && Constants.NETWORK_PARAMETERS.equals(Address.getParametersFromAddress(addressStr))) {
-                final String label = addressBookDao.resolveLabel(addressStr);
+                final String label = viewModel.addressBook.resolveLabel(addressStr);
                 viewModel.validatedAddress = new AddressAndLabel(Constants.NETWORK_PARAMETERS, addressStr, label);
                 receivingAddressView.setText(null);
                 log.info("Locked to valid address: {}", viewModel.validatedAddress);
@@ -1005,7 +1006,7 @@ public final class SendCoinsFragment extends Fragment {
         final Wallet wallet = viewModel.wallet.getValue();
         final Map<FeeCategory, Coin> fees = viewModel.dynamicFees.getValue();
         final BlockchainState blockchainState = viewModel.blockchainState.getValue();
-        final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(viewModel.addressBook.getValue());
+        final Map<String, AddressBookEntry> addressBook = viewModel.addressBook.getValue();
 
         if (viewModel.paymentIntent != null) {
             final MonetaryFormat btcFormat = config.getFormat();
@@ -1048,7 +1049,7 @@ public final class SendCoinsFragment extends Fragment {
 
                 receivingStaticAddressView.setText(WalletUtils.formatAddress(viewModel.validatedAddress.address,
                         Constants.ADDRESS_FORMAT_GROUP_SIZE, Constants.ADDRESS_FORMAT_LINE_SIZE));
-                final String addressBookLabel = addressBookDao
+                final String addressBookLabel = viewModel.addressBook
                         .resolveLabel(viewModel.validatedAddress.address.toBase58());
                 final String staticLabel;
                 if (addressBookLabel != null)
@@ -17,14 +17,11 @@
 
 package de.schildbach.wallet.ui.send;
 
-import java.util.List;
-
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.wallet.Wallet.BalanceType;
 
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.data.AddressBookEntry;
-import de.schildbach.wallet.data.AppDatabase;
+import de.schildbach.wallet.data.AddressBookCache;
 import de.schildbach.wallet.data.BlockchainStateLiveData;
 import de.schildbach.wallet.data.DynamicFeeLiveData;
 import de.schildbach.wallet.data.PaymentIntent;
@@ -36,7 +33,6 @@ import de.schildbach.wallet.ui.AddressAndLabel;
 import android.app.Application;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
-import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 /**
@@ -51,7 +47,7 @@ public class SendCoinsViewModel extends AndroidViewModel {
 
     private final WalletApplication application;
     public final WalletLiveData wallet;
-    public final LiveData<List<AddressBookEntry>> addressBook;
+    public final AddressBookCache addressBook;
     public final SelectedExchangeRateLiveData exchangeRate;
     public final DynamicFeeLiveData dynamicFees;
     public final BlockchainStateLiveData blockchainState;
@@ -78,7 +74,7 @@ public class SendCoinsViewModel extends AndroidViewModel {
         super(application);
         this.application = (WalletApplication) application;
         this.wallet = new WalletLiveData(this.application);
-        this.addressBook = AppDatabase.getDatabase(this.application).addressBookDao().getAll();
+        this.addressBook = AddressBookCache.get(this.application);
         this.exchangeRate = new SelectedExchangeRateLiveData(this.application);
         this.dynamicFees = new DynamicFeeLiveData(this.application);
         this.blockchainState = new BlockchainStateLiveData(this.application);
@@ -412,52 +412,19 @@ public class SweepWalletFragment extends Fragment {
         final RequestWalletBalanceTask.ResultCallback callback = new RequestWalletBalanceTask.ResultCallback() {
             @Override
             public void onResult(final Set<UTXO> utxos) {
-                viewModel.progress.setValue(null);
-
-                // Filter UTXOs we've already spent and sort the rest.
-                final Set<Transaction> walletTxns = application.getWallet().getTransactions(false);
-                final Set<UTXO> sortedUtxos = new TreeSet<>(UTXO_COMPARATOR);
-                for (final UTXO utxo : utxos)
-                    if (!utxoSpentBy(walletTxns, utxo))
-                        sortedUtxos.add(utxo);
-
-                // Fake transaction funding the wallet to sweep.
-                final Map<Sha256Hash, Transaction> fakeTxns = new HashMap<>();
-                for (final UTXO utxo : sortedUtxos) {
-                    Transaction fakeTx = fakeTxns.get(utxo.getHash());
-                    if (fakeTx == null) {
-                        fakeTx = new FakeTransaction(Constants.NETWORK_PARAMETERS, utxo.getHash());
-                        fakeTx.getConfidence().setConfidenceType(ConfidenceType.BUILDING);
-                        fakeTxns.put(fakeTx.getHash(), fakeTx);
-                    }
-                    final TransactionOutput fakeOutput = new TransactionOutput(Constants.NETWORK_PARAMETERS, fakeTx,
-                            utxo.getValue(), utxo.getScript().getProgram());
-                    // Fill with output dummies as needed.
-                    while (fakeTx.getOutputs().size() < utxo.getIndex())
-                        fakeTx.addOutput(new TransactionOutput(Constants.NETWORK_PARAMETERS, fakeTx,
-                                Coin.NEGATIVE_SATOSHI, new byte[] {}));
-                    // Add the actual output we will spend later.
-                    fakeTx.addOutput(fakeOutput);
-                }
-
-                viewModel.walletToSweep.clearTransactions(0);
-                for (final Transaction tx : fakeTxns.values())
-                    viewModel.walletToSweep
-                            .addWalletTransaction(new WalletTransaction(WalletTransaction.Pool.UNSPENT, tx));
-                log.info("built wallet to sweep:\n{}", viewModel.walletToSweep.toString(false, true, false, null));
-
-                updateView();
-            }
-
-            private boolean utxoSpentBy(final Set<Transaction> transactions, final UTXO utxo) {
-                for (final Transaction tx : transactions) {
-                    for (final TransactionInput input : tx.getInputs()) {
-                        final TransactionOutPoint outpoint = input.getOutpoint();
-                        if (outpoint.getHash().equals(utxo.getHash()) && outpoint.getIndex() == utxo.getIndex())
-                            return true;
+                application.getWalletAsync(new WalletApplication.OnWalletLoadedListener() {
+                    @Override
+                    public void onWalletLoaded(final Wallet wallet) {
+                        final Set<Transaction> walletTxns = wallet.getTransactions(false);
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                viewModel.progress.setValue(null);
+                                buildWalletToSweep(utxos, walletTxns);
+                            }
+                        });
                     }
-                }
-                return false;
+                });
             }
 
             @Override
@@ -485,6 +452,51 @@ public class SweepWalletFragment extends Fragment {
             new RequestWalletBalanceTaskChainz(backgroundHandler, callback, application.httpUserAgent()).requestWalletBalance(key);
     }
 
+    private void buildWalletToSweep(final Set<UTXO> utxos, final Set<Transaction> walletTxns) {
+        // Filter UTXOs we've already spent and sort the rest.
+        final Set<UTXO> sortedUtxos = new TreeSet<>(UTXO_COMPARATOR);
+        for (final UTXO utxo : utxos)
+            if (!utxoSpentBy(walletTxns, utxo))
+                sortedUtxos.add(utxo);
+
+        // Fake transaction funding the wallet to sweep.
+        final Map<Sha256Hash, Transaction> fakeTxns = new HashMap<>();
+        for (final UTXO utxo : sortedUtxos) {
+            Transaction fakeTx = fakeTxns.get(utxo.getHash());
+            if (fakeTx == null) {
+                fakeTx = new FakeTransaction(Constants.NETWORK_PARAMETERS, utxo.getHash());
+                fakeTx.getConfidence().setConfidenceType(ConfidenceType.BUILDING);
+                fakeTxns.put(fakeTx.getHash(), fakeTx);
+            }
+            final TransactionOutput fakeOutput = new TransactionOutput(Constants.NETWORK_PARAMETERS, fakeTx,
+                    utxo.getValue(), utxo.getScript().getProgram());
+            // Fill with output dummies as needed.
+            while (fakeTx.getOutputs().size() < utxo.getIndex())
+                fakeTx.addOutput(new TransactionOutput(Constants.NETWORK_PARAMETERS, fakeTx,
+                        Coin.NEGATIVE_SATOSHI, new byte[] {}));
+            // Add the actual output we will spend later.
+            fakeTx.addOutput(fakeOutput);
+        }
+
+        viewModel.walletToSweep.clearTransactions(0);
+        for (final Transaction tx : fakeTxns.values())
+            viewModel.walletToSweep.addWalletTransaction(new WalletTransaction(WalletTransaction.Pool.UNSPENT, tx));
+        log.info("built wallet to sweep:\n{}", viewModel.walletToSweep.toString(false, true, false, null));
+
+        updateView();
+    }
+
+    private static boolean utxoSpentBy(final Set<Transaction> transactions, final UTXO utxo) {
+        for (final Transaction tx : transactions) {
+            for (final TransactionInput input : tx.getInputs()) {
+                final TransactionOutPoint outpoint = input.getOutpoint();
+                if (outpoint.getHash().equals(utxo.getHash()) && outpoint.getIndex() == utxo.getIndex())
+                    return true;
+            }
+        }
+        return false;
+    }
+
     private void setState(final SweepWalletViewModel.State state) {
         viewModel.state = state;
 
@@ -528,6 +540,7 @@ public class SweepWalletFragment extends Fragment {
 
         if (viewModel.sentTransaction != null) {
             sweepTransactionViewGroup.setVisibility(View.VISIBLE);
+            // the sent transaction is only there after sweeping, which needed the loaded wallet
             sweepTransactionViewHolder
                     .bind(new TransactionsAdapter.ListItem.TransactionItem(activity, viewModel.sentTransaction,
                             application.getWallet(), null, btcFormat, application.maxConnectedPeers(), false));
@@ -581,6 +594,7 @@ public class SweepWalletFragment extends Fragment {
         setState(SweepWalletViewModel.State.PREPARATION);
 
         final Map<FeeCategory, Coin> fees = viewModel.getDynamicFees().getValue();
+        // the wallet was loaded for building the wallet to sweep, so this won't block
         final SendRequest sendRequest = SendRequest.emptyWallet(application.getWallet().freshReceiveAddress());
         sendRequest.feePerKb = fees.get(FeeCategory.NORMAL);
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+/**
+ * Checkpoints in the binary format compiled from the text checkpoints at build time. The file consists of a magic,
+ * the number of checkpoints, an index of block times and finally the checkpoints themselves, in compact
+ * {@link StoredBlock} format. All ordered by time, so finding the checkpoint for a given time is a binary search on the
+ * index, and only that one checkpoint needs to be deserialized.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BinaryCheckpoints {
+    private final ByteBuffer buffer;
+    private final int size;
+
+    public static final String MAGIC = "CHKP";
+    private static final int INDEX_OFFSET = MAGIC.length() + 4;
+    private static final int INDEX_ENTRY_SIZE = 4;
+
+    /** Same safety margin as {@link org.bitcoinj.core.CheckpointManager}, for clocks running off. */
+    private static final long TIME_MARGIN_SECS = 7 * 24 * 60 * 60;
+
+    private BinaryCheckpoints(final ByteBuffer buffer, final int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    public static BinaryCheckpoints read(final ByteBuffer buffer) throws IOException {
+        final byte[] magic = new byte[MAGIC.length()];
+        if (buffer.remaining() < INDEX_OFFSET)
+            throw new IOException("truncated checkpoints");
+        buffer.duplicate().get(magic);
+        if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII)))
+            throw new IOException("not binary checkpoints");
+        final int size = buffer.getInt(buffer.position() + MAGIC.length());
+        if (size < 0 || buffer.remaining() != INDEX_OFFSET
+                + (long) size * (INDEX_ENTRY_SIZE + StoredBlock.COMPACT_SERIALIZED_SIZE))
+            throw new IOException("unexpected size of checkpoints: " + size + " / " + buffer.remaining() + " bytes");
+        return new BinaryCheckpoints(buffer.slice(), size);
+    }
+
+    /**
+     * Maps the given asset into memory. The asset must be stored uncompressed.
+     */
+    public static BinaryCheckpoints map(final AssetManager assets, final String filename) throws IOException {
+        try (final AssetFileDescriptor fd = assets.openFd(filename);
+                final FileInputStream is = fd.createInputStream()) {
+            return read(is.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength()));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** @return block time of the checkpoint, in seconds */
+    public long getTime(final int index) {
+        return buffer.getInt(INDEX_OFFSET + index * INDEX_ENTRY_SIZE) & 0xffffffffL;
+    }
+
+    public StoredBlock get(final NetworkParameters params, final int index) {
+        final ByteBuffer record = buffer.duplicate();
+        record.position(INDEX_OFFSET + size * INDEX_ENTRY_SIZE + index * StoredBlock.COMPACT_SERIALIZED_SIZE);
+        return StoredBlock.deserializeCompact(params, record);
+    }
+
+    /**
+     * @return index of the latest checkpoint at or before the given time, or -1 if there is none
+     */
+    public int indexBefore(final long timeSecs) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getTime(mid) <= timeSecs)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low - 1;
+    }
+
+    /**
+     * Equivalent to {@link org.bitcoinj.core.CheckpointManager#checkpoint}: moves the empty store forward to the
+     * checkpoint a week before the given time, or leaves it at the genesis block.
+     */
+    public void checkpoint(final NetworkParameters params, final BlockStore store, final long timeSecs)
+            throws BlockStoreException {
+        final int index = indexBefore(timeSecs - TIME_MARGIN_SECS);
+        final StoredBlock checkpoint;
+        if (index >= 0) {
+            checkpoint = get(params, index);
+        } else {
+            final Block genesis = params.getGenesisBlock().cloneAsHeader();
+            checkpoint = new StoredBlock(genesis, genesis.getWork(), 0);
+        }
+        store.put(checkpoint);
+        store.setChainHead(checkpoint);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bitcoinj.crypto.MnemonicCode;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * BIP39 wordlist packed into a single byte array of newline-terminated words plus a table of word offsets. Words are
+ * only materialized as strings on demand, and because the list is sorted, lookups are binary searches.
+ *
+ * @author Andreas Schildbach
+ */
+public final class Bip39Wordlist {
+    private final byte[] words;
+    private final int[] offsets;
+
+    public static final int SIZE = 2048;
+
+    private Bip39Wordlist(final byte[] words, final int[] offsets) {
+        this.words = words;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Reads a wordlist of one word per line, in ascending order.
+     */
+    public static Bip39Wordlist read(final InputStream is) throws IOException {
+        byte[] words = ByteStreams.toByteArray(is);
+        // normalize line endings, so the packed array can be fed to MnemonicCode as-is
+        int length = 0;
+        for (final byte b : words)
+            if (b != '\r')
+                words[length++] = b;
+        if (length == 0 || words[length - 1] != '\n') {
+            words = Arrays.copyOf(words, length + 1);
+            words[length] = '\n';
+        } else {
+            words = Arrays.copyOf(words, length);
+        }
+
+        final int[] offsets = new int[SIZE + 1];
+        int count = 0;
+        offsets[0] = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] == '\n') {
+                checkArgument(count < SIZE, "too many words");
+                offsets[++count] = i + 1;
+            }
+        }
+        checkArgument(count == SIZE, "expected %s words, got %s", SIZE, count);
+
+        final Bip39Wordlist wordlist = new Bip39Wordlist(words, offsets);
+        for (int i = 1; i < SIZE; i++)
+            checkArgument(wordlist.compare(i - 1, i) < 0, "not sorted at word %s", i);
+        return wordlist;
+    }
+
+    public String get(final int index) {
+        return new String(words, offsets[index], offsets[index + 1] - offsets[index] - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return index of the word, or a negative value if it isn't part of the wordlist
+     */
+    public int indexOf(final String word) {
+        final byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = SIZE - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compare(mid, key, false);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns all words starting with the given prefix, in order. Useful for autocompleting partially typed words.
+     */
+    public List<String> getWordsWithPrefix(final String prefix) {
+        final byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        final int from = lowerBound(key);
+        final List<String> result = new ArrayList<>();
+        for (int i = from; i < SIZE && compare(i, key, true) == 0; i++)
+            result.add(get(i));
+        return result;
+    }
+
+    /**
+     * Creates the bitcoinj mnemonic code from this wordlist, without another round of parsing the asset.
+     */
+    public MnemonicCode toMnemonicCode() throws IOException {
+        return new MnemonicCode(new ByteArrayInputStream(words), null);
+    }
+
+    private int lowerBound(final byte[] key) {
+        int low = 0;
+        int high = SIZE;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compare(mid, key, true) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /** Compares the word at the given index against the key, optionally only up to the length of the key. */
+    private int compare(final int index, final byte[] key, final boolean prefix) {
+        final int offset = offsets[index];
+        final int length = offsets[index + 1] - offset - 1;
+        final int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            final int cmp = (words[offset + i] & 0xff) - (key[i] & 0xff);
+            if (cmp != 0)
+                return cmp;
+        }
+        if (prefix && length >= key.length)
+            return 0;
+        return length - key.length;
+    }
+
+    private int compare(final int index1, final int index2) {
+        final int offset = offsets[index2];
+        return compare(index1, Arrays.copyOfRange(words, offset, offsets[index2 + 1] - 1), false);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Rates of one currency by day, as fixed size records of day since epoch and fiat value of one coin, sorted by day.
+ * Backed by a byte buffer that can be memory-mapped straight from a file, so finding the rate of a day is a binary
+ * search on the buffer.
+ *
+ * @author Andreas Schildbach
+ */
+public final class DailyRates {
+    private final ByteBuffer buffer;
+    private final int size;
+
+    public static final int RECORD_SIZE = 4 + 8;
+
+    private DailyRates(final ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.remaining() / RECORD_SIZE;
+    }
+
+    /**
+     * Wraps the given records. A trailing partial record, as left by an interrupted write, is ignored.
+     */
+    public static DailyRates read(final ByteBuffer buffer) {
+        final ByteBuffer records = buffer.slice();
+        records.limit(records.limit() - records.limit() % RECORD_SIZE);
+        return new DailyRates(records);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDay(final int index) {
+        return buffer.getInt(index * RECORD_SIZE);
+    }
+
+    public long getValue(final int index) {
+        return buffer.getLong(index * RECORD_SIZE + 4);
+    }
+
+    /**
+     * @return index of the latest rate at or before the given day, or -1 if there is none
+     */
+    public int indexBefore(final int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getDay(mid) <= day)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low - 1;
+    }
+
+    /**
+     * @return the records, ready for writing out
+     */
+    public ByteBuffer buffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Merges the given rates, keyed by day, into the given existing ones. Where both have a rate for the same day,
+     * the given rate wins.
+     */
+    public static DailyRates merge(@Nullable final DailyRates existing, final SortedMap<Integer, Long> rates) {
+        final SortedMap<Integer, Long> merged = new TreeMap<>();
+        if (existing != null)
+            for (int i = 0; i < existing.size; i++)
+                merged.put(existing.getDay(i), existing.getValue(i));
+        merged.putAll(rates);
+
+        final ByteBuffer records = ByteBuffer.allocate(merged.size() * RECORD_SIZE);
+        for (final Map.Entry<Integer, Long> entry : merged.entrySet())
+            records.putInt(entry.getKey()).putLong(entry.getValue());
+        records.flip();
+        return new DailyRates(records);
+    }
+}
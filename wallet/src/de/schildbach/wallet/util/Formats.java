@@ -41,6 +41,82 @@ public final class Formats {
             "(?:Payment request for Coinbase order code: (.+)|Payment request for BitPay invoice (.+) for merchant (.+))",
             Pattern.CASE_INSENSITIVE);
 
+    /**
+     * Parses a decimal number like {@code "1234.5678"} or {@code "1.2e-5"} into a fixed-point value with the given
+     * number of decimals. Any further decimals are truncated. Unlike going via {@link java.math.BigDecimal}, this
+     * doesn't allocate.
+     *
+     * @throws IllegalArgumentException
+     *             if the string is not a number, or its value doesn't fit into a long
+     */
+    public static long parseFixedPoint(final CharSequence str, final int decimals) {
+        final int length = str.length();
+        int i = 0;
+        final boolean negative = length > 0 && str.charAt(0) == '-';
+        if (negative || (length > 0 && str.charAt(0) == '+'))
+            i++;
+
+        long mantissa = 0;
+        int scale = 0; // decimals of the mantissa
+        boolean hasDigits = false, hasPoint = false;
+        for (; i < length; i++) {
+            final char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                final int digit = c - '0';
+                if (mantissa < Long.MAX_VALUE / 10
+                        || (mantissa == Long.MAX_VALUE / 10 && digit <= Long.MAX_VALUE % 10)) {
+                    mantissa = mantissa * 10 + digit;
+                    if (hasPoint)
+                        scale++;
+                } else if (!hasPoint) {
+                    // too many digits, drop them while keeping the magnitude
+                    scale--;
+                }
+            } else if (c == '.' && !hasPoint) {
+                hasPoint = true;
+            } else if ((c == 'e' || c == 'E') && hasDigits) {
+                break;
+            } else {
+                throw new IllegalArgumentException("not a number: '" + str + "'");
+            }
+        }
+        if (!hasDigits)
+            throw new IllegalArgumentException("not a number: '" + str + "'");
+
+        int exponent = 0;
+        if (i < length) {
+            i++;
+            final boolean negativeExponent = i < length && str.charAt(i) == '-';
+            if (negativeExponent || (i < length && str.charAt(i) == '+'))
+                i++;
+            if (i == length)
+                throw new IllegalArgumentException("not a number: '" + str + "'");
+            for (; i < length; i++) {
+                final char c = str.charAt(i);
+                if (c < '0' || c > '9')
+                    throw new IllegalArgumentException("not a number: '" + str + "'");
+                if (exponent < 10000)
+                    exponent = exponent * 10 + (c - '0');
+            }
+            if (negativeExponent)
+                exponent = -exponent;
+        }
+
+        for (int shift = decimals + exponent - scale; shift != 0 && mantissa != 0;) {
+            if (shift < 0) {
+                mantissa /= 10;
+                shift++;
+            } else {
+                if (mantissa > Long.MAX_VALUE / 10)
+                    throw new IllegalArgumentException("too large: '" + str + "'");
+                mantissa *= 10;
+                shift--;
+            }
+        }
+        return negative ? -mantissa : mantissa;
+    }
+
     @Nullable
     public static String[] sanitizeMemo(final @Nullable String memo) {
         if (memo == null)
@@ -0,0 +1,125 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.WalletChangeEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Result of scanning the inputs and outputs of a transaction against a wallet. Results are memoized per wallet and
+ * invalidated whenever the wallet changes or reorganizes, so repeated rendering doesn't scan scripts over and over.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionAnalysis {
+    /** Net value of the transaction to the wallet. */
+    public final Coin value;
+    /** True if the value is negative. */
+    public final boolean sent;
+    /** True if all inputs and outputs belong to the wallet. */
+    public final boolean self;
+    /** Recipient address if sent, receiving wallet address if received. */
+    @Nullable
+    public final Address address;
+
+    private TransactionAnalysis(final Transaction tx, final Wallet wallet) {
+        this.value = tx.getValue(wallet);
+        this.sent = value.signum() < 0;
+        this.self = WalletUtils.isEntirelySelf(tx, wallet);
+        this.address = sent ? WalletUtils.getToAddressOfSent(tx, wallet)
+                : WalletUtils.getWalletAddressOfReceived(tx, wallet);
+    }
+
+    private static final Map<Wallet, Cache> CACHES = new WeakHashMap<>();
+
+    public static TransactionAnalysis of(final Transaction tx, final Wallet wallet) {
+        final Cache cache;
+        synchronized (CACHES) {
+            Cache c = CACHES.get(wallet);
+            if (c == null) {
+                c = new Cache();
+                wallet.addChangeEventListener(Threading.SAME_THREAD, c);
+                wallet.addReorganizeEventListener(Threading.SAME_THREAD, c);
+                CACHES.put(wallet, c);
+            }
+            cache = c;
+        }
+        return cache.get(tx, wallet);
+    }
+
+    private static final class Cache implements WalletChangeEventListener, WalletReorganizeEventListener {
+        private final AtomicInteger changeCounter = new AtomicInteger();
+        private final Map<Sha256Hash, Entry> entries = new LinkedHashMap<Sha256Hash, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Sha256Hash, Entry> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+        private static final int MAX_ENTRIES = 2048;
+
+        private static final class Entry {
+            public final int changeCounter;
+            public final TransactionAnalysis analysis;
+
+            public Entry(final int changeCounter, final TransactionAnalysis analysis) {
+                this.changeCounter = changeCounter;
+                this.analysis = analysis;
+            }
+        }
+
+        public TransactionAnalysis get(final Transaction tx, final Wallet wallet) {
+            final Sha256Hash hash = tx.getHash();
+            final int changeCounter = this.changeCounter.get();
+            synchronized (entries) {
+                final Entry entry = entries.get(hash);
+                if (entry != null && entry.changeCounter == changeCounter)
+                    return entry.analysis;
+            }
+            // scan outside of the lock, worst case two threads analyze the same transaction
+            final TransactionAnalysis analysis = new TransactionAnalysis(tx, wallet);
+            synchronized (entries) {
+                entries.put(hash, new Entry(changeCounter, analysis));
+            }
+            return analysis;
+        }
+
+        @Override
+        public void onWalletChanged(final Wallet wallet) {
+            changeCounter.incrementAndGet();
+        }
+
+        @Override
+        public void onReorganize(final Wallet wallet) {
+            changeCounter.incrementAndGet();
+        }
+    }
+}
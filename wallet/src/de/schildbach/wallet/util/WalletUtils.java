@@ -20,9 +20,10 @@ package de.schildbach.wallet.util;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.Map;
 
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.NetworkParameters;
@@ -31,15 +32,22 @@ import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.crypto.KeyCrypter;
+import org.bitcoinj.crypto.KeyCrypterScrypt;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.wallet.Protos;
 import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletExtension;
 import org.bitcoinj.wallet.WalletProtobufSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.protobuf.ByteString;
 
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.service.BlockchainService;
@@ -56,6 +64,9 @@ import androidx.annotation.Nullable;
  * @author Andreas Schildbach
  */
 public class WalletUtils {
+    private static final Object autoBackupLock = new Object();
+    private static HashCode lastAutoBackupHash = null;
+
     private static final Logger log = LoggerFactory.getLogger(WalletUtils.class);
 
     public static Spanned formatAddress(final Address address, final int groupSize, final int lineSize) {
@@ -169,25 +180,85 @@ public class WalletUtils {
         return true;
     }
 
+    /**
+     * Backs up the keys of the wallet, in wallet protobuf format without transactions. Only the keys and keychain
+     * related parts are serialized, and if they didn't change since the last backup nothing is written. This makes it
+     * cheap enough to call after anything that might have touched the keys.
+     */
     public static void autoBackupWallet(final Context context, final Wallet wallet) {
         final Stopwatch watch = Stopwatch.createStarted();
-        final Protos.Wallet.Builder builder = new WalletProtobufSerializer().walletToProto(wallet).toBuilder();
+        final byte[] backup = keysToProto(wallet).toByteArray();
+        final HashCode hash = Hashing.sha256().hashBytes(backup);
+        final File file = context.getFileStreamPath(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF);
+
+        synchronized (autoBackupLock) {
+            if (lastAutoBackupHash == null && file.exists()) {
+                try {
+                    lastAutoBackupHash = Files.asByteSource(file).hash(Hashing.sha256());
+                } catch (final IOException x) {
+                    log.info("problem reading wallet backup, will overwrite", x);
+                }
+            }
+            if (hash.equals(lastAutoBackupHash) && file.exists()) {
+                log.debug("wallet backup unchanged, skipping");
+                return;
+            }
+
+            File tempFile = null;
+            try {
+                tempFile = File.createTempFile("key-backup", ".tmp", file.getParentFile());
+                try (final FileOutputStream os = new FileOutputStream(tempFile)) {
+                    os.write(backup);
+                    os.flush();
+                    os.getFD().sync();
+                }
+                if (!tempFile.renameTo(file))
+                    throw new IOException("failed to rename " + tempFile + " to " + file);
+                lastAutoBackupHash = hash;
+                watch.stop();
+                log.info("wallet backed up to: '{}', took {}", Constants.Files.WALLET_KEY_BACKUP_PROTOBUF, watch);
+            } catch (final IOException x) {
+                if (tempFile != null)
+                    tempFile.delete();
+                log.error("problem writing wallet backup", x);
+            }
+        }
+    }
 
-        // strip redundant
-        builder.clearTransaction();
-        builder.clearLastSeenBlockHash();
+    /**
+     * Equivalent to {@link WalletProtobufSerializer#walletToProto(Wallet)} with transactions and last seen block
+     * stripped, but without ever serializing the transactions.
+     */
+    private static Protos.Wallet keysToProto(final Wallet wallet) {
+        final Protos.Wallet.Builder builder = Protos.Wallet.newBuilder();
+        builder.setNetworkIdentifier(wallet.getNetworkParameters().getId());
+        if (wallet.getDescription() != null)
+            builder.setDescription(wallet.getDescription());
+        builder.addAllKey(wallet.serializeKeyChainGroupToProtobuf());
+        for (final Script script : wallet.getWatchedScripts())
+            builder.addWatchedScript(Protos.Script.newBuilder().setProgram(ByteString.copyFrom(script.getProgram()))
+                    .setCreationTimestamp(script.getCreationTimeSeconds() * 1000));
         builder.setLastSeenBlockHeight(-1);
-        builder.clearLastSeenBlockTimeSecs();
-        final Protos.Wallet walletProto = builder.build();
-
-        try (final OutputStream os = context.openFileOutput(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF,
-                Context.MODE_PRIVATE)) {
-            walletProto.writeTo(os);
-            watch.stop();
-            log.info("wallet backed up to: '{}', took {}", Constants.Files.WALLET_KEY_BACKUP_PROTOBUF, watch);
-        } catch (final IOException x) {
-            log.error("problem writing wallet backup", x);
+        final KeyCrypter keyCrypter = wallet.getKeyCrypter();
+        if (keyCrypter == null) {
+            builder.setEncryptionType(Protos.Wallet.EncryptionType.UNENCRYPTED);
+        } else {
+            builder.setEncryptionType(keyCrypter.getUnderstoodEncryptionType());
+            if (keyCrypter instanceof KeyCrypterScrypt)
+                builder.setEncryptionParameters(((KeyCrypterScrypt) keyCrypter).getScryptParameters());
+            else
+                throw new IllegalStateException("unsupported key crypter: " + keyCrypter);
         }
+        if (wallet.getKeyRotationTime() != null)
+            builder.setKeyRotationTime(wallet.getKeyRotationTime().getTime() / 1000);
+        for (final WalletExtension extension : wallet.getExtensions().values())
+            builder.addExtension(Protos.Extension.newBuilder().setId(extension.getWalletExtensionID())
+                    .setMandatory(extension.isWalletExtensionMandatory())
+                    .setData(ByteString.copyFrom(extension.serializeWalletExtension())));
+        for (final Map.Entry<String, ByteString> tag : wallet.getTags().entrySet())
+            builder.addTags(Protos.Tag.newBuilder().setTag(tag.getKey()).setData(tag.getValue()));
+        builder.setVersion(wallet.getVersion());
+        return builder.build();
     }
 
     public static Wallet restoreWalletFromAutoBackup(final Context context) {
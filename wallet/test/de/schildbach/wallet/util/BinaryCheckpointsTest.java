@@ -0,0 +1,84 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.bitcoinj.core.StoredBlock;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class BinaryCheckpointsTest {
+    private static final long[] TIMES = { 1000, 2000, 2000, 3000, 0xfffffff0L };
+
+    private BinaryCheckpoints checkpoints;
+
+    @Before
+    public void setUp() throws Exception {
+        checkpoints = BinaryCheckpoints.read(buffer(TIMES, TIMES.length));
+    }
+
+    @Test
+    public void getTime() throws Exception {
+        assertEquals(TIMES.length, checkpoints.size());
+        assertEquals(1000, checkpoints.getTime(0));
+        assertEquals(0xfffffff0L, checkpoints.getTime(4));
+    }
+
+    @Test
+    public void indexBefore() throws Exception {
+        assertEquals(-1, checkpoints.indexBefore(0));
+        assertEquals(-1, checkpoints.indexBefore(999));
+        assertEquals(0, checkpoints.indexBefore(1000));
+        assertEquals(0, checkpoints.indexBefore(1999));
+        assertEquals(2, checkpoints.indexBefore(2000));
+        assertEquals(2, checkpoints.indexBefore(2999));
+        assertEquals(3, checkpoints.indexBefore(3000));
+        assertEquals(4, checkpoints.indexBefore(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws Exception {
+        BinaryCheckpoints.read(buffer(TIMES, TIMES.length + 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void badMagic() throws Exception {
+        final ByteBuffer buffer = buffer(TIMES, TIMES.length);
+        buffer.put(0, (byte) 'X');
+        BinaryCheckpoints.read(buffer);
+    }
+
+    private static ByteBuffer buffer(final long[] times, final int declaredSize) {
+        final ByteBuffer buffer = ByteBuffer
+                .allocate(8 + times.length * (4 + StoredBlock.COMPACT_SERIALIZED_SIZE));
+        buffer.put(BinaryCheckpoints.MAGIC.getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(declaredSize);
+        for (final long time : times)
+            buffer.putInt((int) time);
+        buffer.rewind();
+        return buffer;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class Bip39WordlistTest {
+    private Bip39Wordlist wordlist;
+
+    @Before
+    public void setUp() throws Exception {
+        final StringBuilder words = new StringBuilder();
+        for (int i = 0; i < Bip39Wordlist.SIZE; i++)
+            words.append(String.format(Locale.US, "w%04d\r\n", i));
+        wordlist = Bip39Wordlist.read(new ByteArrayInputStream(words.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void get() throws Exception {
+        assertEquals("w0000", wordlist.get(0));
+        assertEquals("w2047", wordlist.get(2047));
+    }
+
+    @Test
+    public void indexOf() throws Exception {
+        assertEquals(0, wordlist.indexOf("w0000"));
+        assertEquals(1234, wordlist.indexOf("w1234"));
+        assertEquals(2047, wordlist.indexOf("w2047"));
+        assertTrue(wordlist.indexOf("w") < 0);
+        assertTrue(wordlist.indexOf("w12345") < 0);
+        assertTrue(wordlist.indexOf("x") < 0);
+    }
+
+    @Test
+    public void getWordsWithPrefix() throws Exception {
+        assertEquals(Arrays.asList("w2040", "w2041", "w2042", "w2043", "w2044", "w2045", "w2046", "w2047"),
+                wordlist.getWordsWithPrefix("w204"));
+        assertEquals(Collections.singletonList("w0815"), wordlist.getWordsWithPrefix("w0815"));
+        assertEquals(Bip39Wordlist.SIZE, wordlist.getWordsWithPrefix("").size());
+        assertEquals(Collections.emptyList(), wordlist.getWordsWithPrefix("w3"));
+        assertEquals(Collections.emptyList(), wordlist.getWordsWithPrefix("w08150"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsorted() throws Exception {
+        final StringBuilder words = new StringBuilder();
+        for (int i = Bip39Wordlist.SIZE - 1; i >= 0; i--)
+            words.append(String.format(Locale.US, "w%04d\n", i));
+        Bip39Wordlist.read(new ByteArrayInputStream(words.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShort() throws Exception {
+        Bip39Wordlist.read(new ByteArrayInputStream("abandon\nability\n".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class DailyRatesTest {
+    private static final int[] DAYS = { 100, 101, 105, 200 };
+
+    private DailyRates rates;
+
+    @Before
+    public void setUp() throws Exception {
+        final SortedMap<Integer, Long> map = new TreeMap<>();
+        for (final int day : DAYS)
+            map.put(day, day * 1000L);
+        rates = DailyRates.merge(null, map);
+    }
+
+    @Test
+    public void indexBefore() throws Exception {
+        assertEquals(DAYS.length, rates.size());
+        assertEquals(-1, rates.indexBefore(0));
+        assertEquals(-1, rates.indexBefore(99));
+        assertEquals(0, rates.indexBefore(100));
+        assertEquals(1, rates.indexBefore(101));
+        assertEquals(1, rates.indexBefore(104));
+        assertEquals(2, rates.indexBefore(105));
+        assertEquals(2, rates.indexBefore(199));
+        assertEquals(3, rates.indexBefore(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void indexBeforeEmpty() throws Exception {
+        assertEquals(-1, DailyRates.read(ByteBuffer.allocate(0)).indexBefore(100));
+    }
+
+    @Test
+    public void merge() throws Exception {
+        final SortedMap<Integer, Long> update = new TreeMap<>();
+        update.put(99, 1L);
+        update.put(105, 2L);
+        update.put(300, 3L);
+        final DailyRates merged = DailyRates.merge(rates, update);
+        assertEquals(6, merged.size());
+        assertEquals(99, merged.getDay(0));
+        assertEquals(1, merged.getValue(0));
+        assertEquals(100, merged.getDay(1));
+        assertEquals(100000, merged.getValue(1));
+        // the update wins
+        assertEquals(105, merged.getDay(3));
+        assertEquals(2, merged.getValue(3));
+        assertEquals(300, merged.getDay(5));
+        assertEquals(3, merged.getValue(5));
+    }
+
+    @Test
+    public void readRoundTrip() throws Exception {
+        final DailyRates read = DailyRates.read(rates.buffer());
+        assertEquals(DAYS.length, read.size());
+        for (int i = 0; i < DAYS.length; i++) {
+            assertEquals(DAYS[i], read.getDay(i));
+            assertEquals(DAYS[i] * 1000L, read.getValue(i));
+        }
+    }
+
+    @Test
+    public void readIgnoresPartialRecord() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(DAYS.length * DailyRates.RECORD_SIZE + 5);
+        buffer.put(rates.buffer());
+        buffer.flip();
+        buffer.limit(buffer.capacity());
+        assertEquals(DAYS.length, DailyRates.read(buffer).size());
+    }
+}
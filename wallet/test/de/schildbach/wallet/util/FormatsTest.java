@@ -107,4 +107,41 @@ public class FormatsTest {
         final Matcher signOnly = Formats.PATTERN_MONETARY_SPANNABLE.matcher("+");
         assertFalse(signOnly.find());
     }
+
+    @Test
+    public void parseFixedPoint() throws Exception {
+        assertEquals(0, Formats.parseFixedPoint("0", 4));
+        assertEquals(10000, Formats.parseFixedPoint("1", 4));
+        assertEquals(12345678, Formats.parseFixedPoint("1234.5678", 4));
+        assertEquals(12345678, Formats.parseFixedPoint("1234.56789", 4));
+        assertEquals(-12345678, Formats.parseFixedPoint("-1234.56789", 4));
+        assertEquals(5000, Formats.parseFixedPoint(".5", 4));
+        assertEquals(50000, Formats.parseFixedPoint("5.", 4));
+        assertEquals(12, Formats.parseFixedPoint("1.2e-3", 4));
+        assertEquals(12, Formats.parseFixedPoint("1.23E-3", 4));
+        assertEquals(0, Formats.parseFixedPoint("1.2e-5", 4));
+        assertEquals(120000, Formats.parseFixedPoint("1.2e+1", 4));
+        assertEquals(12345678, Formats.parseFixedPoint("123456789012345678901234e-20", 4));
+        assertEquals(Long.MAX_VALUE, Formats.parseFixedPoint("922337203685477.5807", 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseFixedPoint_empty() throws Exception {
+        Formats.parseFixedPoint("", 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseFixedPoint_garbage() throws Exception {
+        Formats.parseFixedPoint("1.2.3", 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseFixedPoint_emptyExponent() throws Exception {
+        Formats.parseFixedPoint("1e", 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseFixedPoint_tooLarge() throws Exception {
+        Formats.parseFixedPoint("922337203685477.5808e1", 4);
+    }
 }